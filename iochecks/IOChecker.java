@@ -2,28 +2,113 @@
 //REPOS mavencentral,mavensnapshot=https://central.sonatype.com/repository/maven-snapshots/
 
 //DEPS com.pi4j:pi4j-drivers:0.0.1-SNAPSHOT
+//JAVA 22+
+//RUNTIME_OPTIONS --enable-native-access=ALL-UNNAMED
 
+package com.pi4j.iochecks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+
 import com.pi4j.Pi4J;
 import com.pi4j.context.Context;
 import com.pi4j.drivers.sensor.Sensor;
 import com.pi4j.drivers.sensor.SensorDescriptor;
 import com.pi4j.drivers.sensor.SensorDetector;
+import com.pi4j.io.gpio.digital.DigitalInput;
+import com.pi4j.io.gpio.digital.DigitalOutput;
+import com.pi4j.io.spi.Spi;
+import com.pi4j.provider.Provider;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
 
 /**
  * Make sure JBang is installed on your system! More info on the
@@ -41,485 +126,5151 @@ import com.pi4j.drivers.sensor.SensorDetector;
  *     <li>spi</li>
  *     <li>serial</li>
  * </ul>
+ * The benchmarks only run when they are selected by name:
+ * <ul>
+ *     <li>gpio-bench</li>
+ *     <li>gpio-edge-bench</li>
+ *     <li>pwm-sweep</li>
+ *     <li>sensor-bench</li>
+ *     <li>i2c-bench</li>
+ *     <li>spi-bench</li>
+ *     <li>serial-bench</li>
+ * </ul>
  * For example:
  * <ul>
  *     <li>Only PWM: `jbang https://github.com/pi4j/pi4j-os/blob/main/iochecks/IOChecker.java pwm`</li>
  *     <li>I2C and SPI: `jbang https://github.com/pi4j/pi4j-os/blob/main/iochecks/IOChecker.java i2c spi`</li>
  * </ul>
+ * All selected checks run concurrently, each on its own virtual thread, but the results are always printed
+ * in the order listed above. With {@code --format=ndjson}, each result entry is written as one JSON line as soon as
+ * its check is completed. Results of the inventory checks are cached in a tmpfs until the next reboot or hardware
+ * change, use {@code --fresh} to ignore the cache. Additional checks can be added by any jar on the class path that
+ * registers an implementation of {@code com.pi4j.iochecks.IOChecker$Checker} in {@code META-INF/services}.
  */
 public class IOChecker {
 
     public static void main(String[] args) {
-        List<String> argList = Arrays.asList(args);
+        var options = Options.parse(args);
 
-        if (argList.isEmpty() || argList.contains("gpio")) {
-            System.out.println(GPIOChecker.detect().logOutput());
+        options.value("dt-snapshot").ifPresent(file -> DeviceTreeIndex.useSnapshot(Paths.get(file)));
+        var saveSnapshot = options.value("save-dt-snapshot");
+        if (saveSnapshot.isPresent()) {
+            try {
+                var index = DeviceTreeIndex.shared();
+                index.save(Paths.get(saveSnapshot.get()));
+                System.out.printf("Saved %d device-tree nodes to %s%n", index.nodes().size(), saveSnapshot.get());
+            } catch (IOException e) {
+                System.err.printf("Could not save device-tree snapshot: %s%n", e.getMessage());
+            }
+            return;
         }
 
-        if (argList.isEmpty() || argList.contains("pwm")) {
-            System.out.println(PWMChecker.detect().logOutput());
+        var checkers = CheckerScheduler.select(Checker.discover(options.checks()), options.checks());
+        var ndjson = options.value("format").orElse("text").equals("ndjson") ? new NdjsonWriter(System.out) : null;
+        try {
+            if (options.has("watch")) {
+                Runtime.getRuntime().addShutdownHook(new Thread(Pi4JContexts::shutdown));
+                new WatchMode(checkers).run();
+                return;
+            }
+
+            // A device-tree snapshot describes another board, so its results are never cached
+            var cache = options.has("fresh") || options.has("dt-snapshot") ? Optional.<InventoryCache>empty() : InventoryCache.open();
+            var cached = cache.flatMap(c -> c.load(checkers));
+            if (cached.isPresent()) {
+                System.err.printf("Using the inventory cached in %s, run with --fresh to check again%n", cache.get().file());
+                for (int i = 0; i < checkers.size(); i++) {
+                    if (ndjson != null) {
+                        ndjson.completed(checkers.get(i), cached.get().get(i), System.nanoTime());
+                    } else {
+                        System.out.println(cached.get().get(i).logOutput());
+                    }
+                }
+                return;
+            }
+
+            var scheduler = new CheckerScheduler(checkers);
+            var results = ndjson != null
+                    ? scheduler.run(ndjson, result -> {
+                    })
+                    : scheduler.run(result -> System.out.println(result.logOutput()));
+            cache.ifPresent(c -> c.store(scheduler.checkers(), results));
+        } catch (IOException e) {
+            System.err.printf("Error watching for changes: %s%n", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            Pi4JContexts.shutdown();
         }
+    }
 
-        if (argList.isEmpty() || argList.contains("i2c")) {
-            System.out.println(I2CChecker.detect().logOutput());
+    /**
+     * Command line arguments: names of the checks to run, and options in the form {@code --name} or
+     * {@code --name=value}.
+     *
+     * @param checks  names of the checks to run, all checks if empty
+     * @param options the options, with an empty value for options without value
+     */
+    record Options(List<String> checks, Map<String, String> options) {
+        static Options parse(String[] args) {
+            var checks = new ArrayList<String>();
+            var options = new HashMap<String, String>();
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    int equals = arg.indexOf('=');
+                    options.put(equals < 0 ? arg.substring(2) : arg.substring(2, equals),
+                            equals < 0 ? "" : arg.substring(equals + 1));
+                } else {
+                    checks.add(arg);
+                }
+            }
+            return new Options(List.copyOf(checks), Map.copyOf(options));
         }
 
-        if (argList.isEmpty() || argList.contains("spi")) {
-            System.out.println(SPIChecker.detect().logOutput());
+        public boolean has(String option) {
+            return options.containsKey(option);
         }
 
-        if (argList.isEmpty() || argList.contains("serial")) {
-            System.out.println(SerialChecker.detect().logOutput());
+        public Optional<String> value(String option) {
+            return Optional.ofNullable(options.get(option)).filter(v -> !v.isEmpty());
         }
     }
 
-    static class CommandExecutor {
-        private static final int COMMAND_TIMEOUT_SECONDS = 30;
+    /**
+     * Keeps running after the first evaluation, and re-runs only the checks affected by a change of a device,
+     * sysfs entry or config file, printing the differences with the previous result.
+     *
+     * <p>New and removed device nodes in /dev, and changes of the config files, are watched with inotify, through
+     * the {@link WatchService}.
+     * sysfs doesn't report new entries to inotify, so the sysfs directories are compared every few seconds,
+     * which only costs a directory listing.</p>
+     */
+    static class WatchMode {
+        static final Path DEV = Paths.get("/dev");
+        static final List<Path> SYSFS_PATHS = List.of(Paths.get("/sys/class/pwm"), Paths.get("/sys/bus/spi/devices"));
+
+        private static final Duration DEBOUNCE = Duration.ofMillis(200);
+        private static final Duration SYSFS_POLL_INTERVAL = Duration.ofSeconds(2);
+        private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+        private final List<Checker> checkers;
+        private final Map<String, CheckerResult> lastResults = new HashMap<>();
+        private final Map<Path, Set<String>> sysfsListings = new HashMap<>();
 
         /**
-         * Executes a given command and captures its output and error streams.
-         *
-         * <p>Please be careful when using this method. Since we decided to remove the
-         * 'sh -c' part, this method no longer supports pipes, redirection, or other
-         * shell-specific features. Only simple, direct commands should be executed.</p>
-         *
-         * @param command The command to execute (must be simple, direct command without shell features).
-         * @return A {@link CommandResult} containing:
-         *         - {@code success}: true if the command executed successfully within the timeout.
-         *         - {@code outputMessage}: the standard output from the command.
-         *         - {@code errorMessage}: the error output or any exception message.
+         * @param checkers the selected checks, in output order, including their dependencies
          */
-        public static CommandResult execute(String command) {
-            boolean finished = false;
-            String outputMessage = "";
-            String errorMessage = "";
+        WatchMode(List<Checker> checkers) {
+            this.checkers = checkers;
+        }
 
-            // Configure the process builder with the command (no shell involved).
-            ProcessBuilder builder = new ProcessBuilder(command.split(" "));
+        /**
+         * Runs all checks, and then watches for changes until the process is stopped.
+         */
+        void run() throws IOException, InterruptedException {
+            var all = new CheckerScheduler(checkers);
+            store(all.checkers(), all.run(result -> System.out.println(result.logOutput())));
 
-            try {
-                Process process = builder.start();
+            try (var watchService = FileSystems.getDefault().newWatchService()) {
+                // Only new and removed nodes in /dev, as every write to a device node, e.g. by the i2c-sensors
+                // check itself, is reported as a modification
+                register(watchService, DEV, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE);
+                BootConfig.DEFAULT_PATHS.stream()
+                        .map(Path::getParent)
+                        .distinct()
+                        .forEach(dir -> register(watchService, dir, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+                SYSFS_PATHS.forEach(path -> sysfsListings.put(path, list(path)));
 
-                outputMessage = readStream(process.getInputStream());
-                errorMessage = readStream(process.getErrorStream());
+                System.out.printf("Watching for changes, press Ctrl+C to stop%n%n");
 
-                finished = process.waitFor(COMMAND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                var changes = new LinkedHashSet<Path>();
+                long runAt = Long.MAX_VALUE;
+                long nextPoll = System.nanoTime() + SYSFS_POLL_INTERVAL.toNanos();
 
-                if (!finished) {
-                    process.destroyForcibly();
-                    errorMessage = "Process timeout after " + COMMAND_TIMEOUT_SECONDS + " seconds.";
+                while (true) {
+                    long wait = Math.max(0, Math.min(runAt, nextPoll) - System.nanoTime());
+                    var key = watchService.poll(wait, TimeUnit.NANOSECONDS);
+                    if (key != null) {
+                        var dir = (Path) key.watchable();
+                        for (var event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                                changes.add(dir);
+                            } else {
+                                changes.add(dir.resolve((Path) event.context()));
+                            }
+                        }
+                        key.reset();
+                    }
+
+                    long now = System.nanoTime();
+                    if (now >= nextPoll) {
+                        changes.addAll(pollSysfs());
+                        nextPoll = now + SYSFS_POLL_INTERVAL.toNanos();
+                    }
+
+                    // Wait a moment after the first change, as a HAT or USB device often creates several entries
+                    if (!changes.isEmpty() && runAt == Long.MAX_VALUE) {
+                        runAt = now + DEBOUNCE.toNanos();
+                    }
+                    if (now >= runAt) {
+                        reevaluate(changes);
+                        changes.clear();
+                        runAt = Long.MAX_VALUE;
+                    }
                 }
+            }
+        }
 
-            } catch (IOException ex) {
-                errorMessage = "IOException while executing command: " + ex.getMessage();
-                System.err.printf("IOException during command execution '%s': %s", command, ex.getMessage(), ex);
-            } catch (InterruptedException ex) {
-                errorMessage = "InterruptedException during command execution: " + ex.getMessage();
-                Thread.currentThread().interrupt(); // Restore the interrupted status.
-                System.err.printf("InterruptedException during command execution '%s': %s", command, ex.getMessage(), ex);
+        private void reevaluate(Set<Path> changes) {
+            // The device tree can have changed too, e.g. by an overlay loaded at runtime
+            DeviceTreeIndex.invalidate();
+            var affected = new HashSet<String>();
+            for (Checker checker : checkers) {
+                if (changes.stream().anyMatch(path -> path.equals(DEV) || checker.isAffectedBy(path))) {
+                    affected.add(checker.name());
+                }
+            }
+            // Checks that depend on an affected check are affected too
+            boolean added = true;
+            while (added) {
+                added = false;
+                for (Checker checker : checkers) {
+                    if (!affected.contains(checker.name()) && checker.dependencies().stream().anyMatch(affected::contains)) {
+                        added |= affected.add(checker.name());
+                    }
+                }
+            }
+            if (affected.isEmpty()) {
+                return;
             }
 
-            if (!finished || !errorMessage.isEmpty()) {
-                System.err.printf("Failed to execute command '%s': %s", command, errorMessage);
-                return CommandResult.failure(errorMessage);
+            long start = System.nanoTime();
+            var scheduler = new CheckerScheduler(CheckerScheduler.select(checkers, List.copyOf(affected)));
+            var results = scheduler.run(result -> {
+            });
+
+            System.out.printf("[%s] Changed: %s%n", LocalTime.now().format(TIME_FORMAT),
+                    changes.stream().map(Path::toString).collect(Collectors.joining(", ")));
+            System.out.printf("Re-evaluated %s in %d ms%n", scheduler.checkers().stream().map(Checker::name)
+                    .collect(Collectors.joining(", ")), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            for (int i = 0; i < results.size(); i++) {
+                var name = scheduler.checkers().get(i).name();
+                var diff = diff(lastResults.get(name), results.get(i));
+                System.out.print(diff.isEmpty() ? "No changes in " + results.get(i).title() + "\n" : diff);
             }
+            System.out.println();
 
-            return CommandResult.success(outputMessage);
+            store(scheduler.checkers(), results);
+        }
+
+        private void store(List<Checker> checkers, List<CheckerResult> results) {
+            for (int i = 0; i < results.size(); i++) {
+                lastResults.put(checkers.get(i).name(), results.get(i));
+            }
         }
 
         /**
-         * Reads the content of an InputStream and returns it as a string.
+         * Lists the differences between two results of the same check, per {@link CheckerResult.Check}.
          *
-         * @param inputStream The InputStream to read.
-         * @return The content of the InputStream as a string.
+         * @param before the previous result, can be {@code null}
+         * @param after  the new result
+         * @return the differences, empty if there are none
          */
-        private static String readStream(InputStream inputStream) {
-            StringBuilder content = new StringBuilder();
-            try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream))) {
-                String line;
-                while ((line = bufferedReader.readLine()) != null) {
-                    content.append(line).append(System.lineSeparator());
+        static String diff(CheckerResult before, CheckerResult after) {
+            var previous = byCommand(before == null ? List.of() : before.results());
+            var current = byCommand(after.results());
+            var diff = new StringBuilder();
+
+            current.forEach((command, check) -> {
+                var old = previous.get(command);
+                if (old == null) {
+                    diff.append("\t+ ").append(command).append(" [").append(check.resultStatus()).append("]\n");
+                    appendResult(diff, check);
+                } else if (old.resultStatus() != check.resultStatus() || !old.result().equals(check.result())) {
+                    diff.append("\t~ ").append(command).append(" [").append(old.resultStatus());
+                    if (old.resultStatus() != check.resultStatus()) {
+                        diff.append(" -> ").append(check.resultStatus());
+                    }
+                    diff.append("]\n");
+                    appendResult(diff, check);
                 }
-            } catch (IOException ex) {
-                content.append("ERROR: ").append(ex.getMessage());
-                System.err.printf("Error reading stream: %s", ex.getMessage(), ex);
+            });
+            previous.forEach((command, check) -> {
+                if (!current.containsKey(command)) {
+                    diff.append("\t- ").append(command).append(" [").append(check.resultStatus()).append("]\n");
+                }
+            });
+
+            return diff.isEmpty() ? "" : "Changes in " + after.title() + "\n" + diff;
+        }
+
+        private static void appendResult(StringBuilder diff, CheckerResult.Check check) {
+            if (!check.result().isBlank()) {
+                Arrays.stream(check.result().trim().split("\n"))
+                        .forEach(line -> diff.append("\t\t").append(line).append("\n"));
+            }
+        }
+
+        private static Map<String, CheckerResult.Check> byCommand(List<CheckerResult.Check> checks) {
+            var byCommand = new LinkedHashMap<String, CheckerResult.Check>();
+            for (var check : checks) {
+                var command = check.command().trim();
+                var key = command;
+                for (int i = 2; byCommand.containsKey(key); i++) {
+                    key = command + " #" + i;
+                }
+                byCommand.put(key, check);
+            }
+            return byCommand;
+        }
+
+        private static void register(WatchService watchService, Path dir, WatchEvent.Kind<?>... kinds) {
+            try {
+                if (Files.isDirectory(dir)) {
+                    dir.register(watchService, kinds);
+                }
+            } catch (IOException e) {
+                System.err.printf("Could not watch %s: %s%n", dir, e.getMessage());
+            }
+        }
+
+        private List<Path> pollSysfs() {
+            var changes = new ArrayList<Path>();
+            for (Path path : SYSFS_PATHS) {
+                var listing = list(path);
+                var previous = sysfsListings.put(path, listing);
+                if (previous != null && !previous.equals(listing)) {
+                    var added = new HashSet<>(listing);
+                    added.removeAll(previous);
+                    var removed = new HashSet<>(previous);
+                    removed.removeAll(listing);
+                    added.forEach(name -> changes.add(path.resolve(name)));
+                    removed.forEach(name -> changes.add(path.resolve(name)));
+                }
+            }
+            return changes;
+        }
+
+        private static Set<String> list(Path dir) {
+            try (var stream = Files.list(dir)) {
+                return stream.map(p -> p.getFileName().toString()).collect(Collectors.toSet());
+            } catch (IOException e) {
+                return Set.of();
             }
-            return content.toString().trim(); // Trim trailing line separator.
         }
     }
 
-    static class CommandResult {
-        private final boolean success;
-        private final String outputMessage;
-        private final String errorMessage;
+    /**
+     * A check that can be scheduled by the {@link CheckerScheduler}.
+     *
+     * <p>Implementations must be public and have a public no-argument constructor, so they can be
+     * discovered with {@link ServiceLoader}.</p>
+     */
+    public interface Checker {
+        /**
+         * Unique name of this check, used to select it on the command line and to refer to it as dependency.
+         *
+         * @return the name of the check, e.g. "i2c"
+         */
+        String name();
 
         /**
-         * Constructor to create a new CommandResult.
+         * Names of the checks that must be completed before this one is started.
+         * Facts published by these checks in the {@link CheckContext} are available to this check.
          *
-         * @param success       Whether the command execution was successful.
-         * @param outputMessage The standard output of the command.
-         * @param errorMessage  The error message if the command failed.
+         * @return the names of the checks this check depends on
          */
-        private CommandResult(boolean success, String outputMessage, String errorMessage) {
-            this.success = success;
-            this.outputMessage = Optional.ofNullable(outputMessage).orElse("");
-            this.errorMessage = Optional.ofNullable(errorMessage).orElse("");
+        default Set<String> dependencies() {
+            return Set.of();
         }
 
         /**
-         * Static method to create a successful CommandResult.
+         * Command line arguments that select this check.
          *
-         * @param outputMessage The standard output of the successful command.
-         * @return A CommandResult representing a successful command execution.
+         * @return the arguments that select this check, by default only its name
          */
-        public static CommandResult success(String outputMessage) {
-            return new CommandResult(true, outputMessage, null);
+        default Set<String> selectors() {
+            return Set.of(name());
         }
 
         /**
-         * Static method to create a failed CommandResult.
+         * Used in watch mode, to only re-run the checks affected by a change.
          *
-         * @param errorMessage The error message from the failed command execution.
-         * @return A CommandResult representing a failed command execution.
+         * @param changed a created, deleted or modified file, e.g. /dev/i2c-3
+         * @return {@code true} if the result of this check can depend on the file
          */
-        public static CommandResult failure(String errorMessage) {
-            return new CommandResult(false, null, errorMessage);
+        default boolean isAffectedBy(Path changed) {
+            return false;
         }
 
         /**
-         * Returns whether the command execution was successful.
+         * An opt-in check, like a benchmark, only runs when it is selected by name, or when another selected
+         * check depends on it.
          *
-         * @return {@code true} if successful, {@code false} otherwise.
+         * @return {@code true} if this check doesn't run when no checks are selected
          */
-        public boolean isSuccess() {
-            return success;
+        default boolean isOptIn() {
+            return false;
         }
 
         /**
-         * Returns the standard output message from the command.
+         * Results of cacheable checks are stored in the {@link InventoryCache}, and taken from it on the next run
+         * during the same boot, as long as the hardware configuration didn't change. Checks that measure
+         * something, like benchmarks, must not be cached.
          *
-         * @return The standard output message.
+         * @return {@code true} if the result only depends on the hardware inventory, by default for all checks
+         *         that are not opt-in
          */
-        public String getOutputMessage() {
-            return outputMessage;
+        default boolean isCacheable() {
+            return !isOptIn();
         }
 
         /**
-         * Returns the error message from the command execution.
+         * Executes the check.
          *
-         * @return The error message.
+         * @param context shared context to read facts of dependencies and to publish own facts
+         * @return the result of the check
          */
-        public String getErrorMessage() {
-            return errorMessage;
-        }
+        CheckerResult run(CheckContext context);
 
         /**
-         * Provides a string representation of the CommandResult object.
-         * Useful for logging and debugging.
+         * Returns the built-in checks, followed by the checks registered via {@link ServiceLoader}.
+         * A registered check with the same name as a built-in one is ignored.
          *
-         * @return A string describing the CommandResult.
+         * <p>Looking up registered checks opens every jar on the class path, including the ones of Pi4J and the
+         * Pi4J Drivers library. This is skipped when all selected checks are built-in ones, so e.g. a
+         * {@code gpio} run only loads the classes of the checks it runs.</p>
+         *
+         * @param args the command line arguments that select checks, if empty all checks are needed
+         * @return all known checks in output order, without the registered ones if they are not needed
          */
-        @Override
-        public String toString() {
-            return String.format("CommandResult{success=%b, outputMessage='%s', errorMessage='%s'}",
-                    success, outputMessage, errorMessage);
+        static List<Checker> discover(List<String> args) {
+            var checkers = new LinkedHashMap<String, Checker>();
+            List.of(new GPIOChecker(),
+                    new GPIOBenchmarkChecker(),
+                    new GPIOEdgeBenchmarkChecker(),
+                    new PWMChecker(),
+                    new PWMSweepChecker(),
+                    new I2CChecker(),
+                    new I2CSensorChecker(),
+                    new SensorBenchmarkChecker(),
+                    new I2CBenchmarkChecker(),
+                    new SPIChecker(),
+                    new SPIBenchmarkChecker(),
+                    new SerialChecker(),
+                    new SerialBenchmarkChecker()
+            ).forEach(c -> checkers.put(c.name(), c));
+            if (!args.isEmpty() && args.stream().allMatch(arg -> checkers.values().stream()
+                    .anyMatch(c -> c.selectors().contains(arg)))) {
+                return List.copyOf(checkers.values());
+            }
+            try {
+                ServiceLoader.load(Checker.class).forEach(c -> checkers.putIfAbsent(c.name(), c));
+            } catch (Exception | ServiceConfigurationError e) {
+                System.err.printf("Could not load additional checkers: %s%n", e.getMessage());
+            }
+            return List.copyOf(checkers.values());
         }
+    }
+
+    /**
+     * Typed key of a fact that a check publishes for the checks that depend on it.
+     *
+     * @param name unique name of the fact
+     * @param <T> type of the value
+     */
+    record Fact<T>(String name) {
+    }
+
+    /**
+     * Facts shared between checks. A check only reads facts of the checks it declared as
+     * {@link Checker#dependencies()}, which the scheduler guarantees to be completed.
+     */
+    static class CheckContext {
+        private final Map<Fact<?>, Object> facts = new ConcurrentHashMap<>();
+
+        public <T> void publish(Fact<T> fact, T value) {
+            facts.put(fact, value);
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> Optional<T> get(Fact<T> fact) {
+            return Optional.ofNullable((T) facts.get(fact));
+        }
+    }
+
+    /**
+     * Runs checks concurrently on virtual threads. A check is started as soon as all its dependencies are
+     * completed, so the total duration is about the duration of the slowest chain of checks, instead of the
+     * sum of all of them. Results are handed over in the order of the given list.
+     */
+    static class CheckerScheduler {
+        private final List<Checker> checkers;
 
         /**
-         * Compares this CommandResult to another object for equality.
-         *
-         * @param o The object to compare to.
-         * @return {@code true} if the objects are equal, {@code false} otherwise.
+         * @param checkers the checks to run, in output order, including all their dependencies
          */
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            CommandResult that = (CommandResult) o;
-            return success == that.success &&
-                    Objects.equals(outputMessage, that.outputMessage) &&
-                    Objects.equals(errorMessage, that.errorMessage);
+        CheckerScheduler(List<Checker> checkers) {
+            this.checkers = List.copyOf(checkers);
         }
 
         /**
-         * Returns a hash code value for this CommandResult.
+         * @return the checks to run, in output order
+         */
+        public List<Checker> checkers() {
+            return checkers;
+        }
+
+        /**
+         * Selects the checks matching the given arguments, together with the checks they depend on.
          *
-         * @return The hash code for this object.
+         * @param available all known checks, in output order
+         * @param args command line arguments, if empty all checks except the opt-in ones are selected
+         * @return the selected checks in output order
          */
-        @Override
-        public int hashCode() {
-            return Objects.hash(success, outputMessage, errorMessage);
+        static List<Checker> select(List<Checker> available, List<String> args) {
+            if (args.isEmpty()) {
+                return available.stream()
+                        .filter(c -> !c.isOptIn())
+                        .toList();
+            }
+
+            var byName = new HashMap<String, Checker>();
+            available.forEach(c -> byName.put(c.name(), c));
+
+            var selected = new HashSet<String>();
+            var pending = new ArrayDeque<Checker>();
+            available.stream()
+                    .filter(c -> c.selectors().stream().anyMatch(args::contains))
+                    .forEach(pending::add);
+            while (!pending.isEmpty()) {
+                var checker = pending.pop();
+                if (selected.add(checker.name())) {
+                    for (String dependency : checker.dependencies()) {
+                        var dependencyChecker = byName.get(dependency);
+                        if (dependencyChecker == null) {
+                            throw new IllegalStateException("Check '" + checker.name() + "' depends on unknown check '" + dependency + "'");
+                        }
+                        pending.add(dependencyChecker);
+                    }
+                }
+            }
+
+            return available.stream()
+                    .filter(c -> selected.contains(c.name()))
+                    .toList();
         }
-    }
 
-    static class HexFormatter {
-        private static final HexFormat HEX = HexFormat.of().withUpperCase();
-        private static final HexFormat HEX_ARRAY = HexFormat.ofDelimiter(", ").withUpperCase().withPrefix("0x");
+        /**
+         * Notified on the thread of a check as soon as it is completed, without waiting for the checks before it
+         * in output order. Must be thread-safe.
+         */
+        @FunctionalInterface
+        interface CompletionListener {
+            /**
+             * @param checker   the completed check
+             * @param result    its result
+             * @param startedAt {@link System#nanoTime()} when the check was started
+             */
+            void completed(Checker checker, CheckerResult result, long startedAt);
+        }
 
         /**
-         * Formats a single byte value to hex format, e.g. 0xFF
+         * Runs all checks and waits until they are completed.
          *
-         * @param value byte value to format
-         * @return hex formatted byte value
+         * @param onResult called for each result, in output order, as soon as the result and all results
+         *                 before it are available
+         * @return all results in output order
          */
-        public static String format(byte value) {
-            return "0x" + HEX.toHexDigits(value);
+        public List<CheckerResult> run(Consumer<CheckerResult> onResult) {
+            return run((checker, result, startedAt) -> {
+            }, onResult);
         }
 
         /**
-         * Formats byte array to hex format, e.g. [0x01, 0xFF]
+         * Runs all checks and waits until they are completed.
          *
-         * @param value byte array to format
-         * @return hex formatted byte array
+         * @param onCompleted called for each result as soon as its check is completed
+         * @param onResult    called for each result, in output order, as soon as the result and all results
+         *                    before it are available
+         * @return all results in output order
          */
-        public static String format(byte[] value) {
-            return HEX_ARRAY.formatHex(value);
+        public List<CheckerResult> run(CompletionListener onCompleted, Consumer<CheckerResult> onResult) {
+            var context = new CheckContext();
+            var futures = new HashMap<String, Future<CheckerResult>>();
+            var results = new ArrayList<CheckerResult>();
+
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (Checker checker : sortByDependencies()) {
+                    var dependencies = checker.dependencies().stream()
+                            .map(futures::get)
+                            .filter(Objects::nonNull)
+                            .toList();
+                    futures.put(checker.name(), executor.submit(() -> {
+                        for (var dependency : dependencies) {
+                            dependency.get();
+                        }
+                        long startedAt = System.nanoTime();
+                        var result = runChecker(checker, context);
+                        onCompleted.completed(checker, result, startedAt);
+                        return result;
+                    }));
+                }
+
+                for (Checker checker : checkers) {
+                    var result = await(checker, futures.get(checker.name()));
+                    results.add(result);
+                    onResult.accept(result);
+                }
+            }
+
+            return results;
         }
-    }
 
-    static record CheckerResult(String title, List<Check> results) {
-        public void addResult(Check result) {
-            results.add(result);
+        private List<Checker> sortByDependencies() {
+            var byName = new HashMap<String, Checker>();
+            checkers.forEach(c -> byName.put(c.name(), c));
+
+            var sorted = new LinkedHashMap<String, Checker>();
+            var visiting = new HashSet<String>();
+            checkers.forEach(c -> visit(c, byName, visiting, sorted));
+            return List.copyOf(sorted.values());
         }
 
-        public record Check(ResultStatus resultStatus, String command, String expected, String result) {
+        private static void visit(Checker checker, Map<String, Checker> byName, Set<String> visiting,
+                                  Map<String, Checker> sorted) {
+            if (sorted.containsKey(checker.name())) {
+                return;
+            }
+            if (!visiting.add(checker.name())) {
+                throw new IllegalStateException("Circular dependency detected for check '" + checker.name() + "'");
+            }
+            for (String dependency : checker.dependencies()) {
+                var dependencyChecker = byName.get(dependency);
+                if (dependencyChecker != null) {
+                    visit(dependencyChecker, byName, visiting, sorted);
+                }
+            }
+            visiting.remove(checker.name());
+            sorted.put(checker.name(), checker);
         }
 
-        public enum ResultStatus {
-            PASS, FAIL, TO_EVALUATE, UNDEFINED
+        private static CheckerResult runChecker(Checker checker, CheckContext context) {
+            try {
+                return checker.run(context);
+            } catch (Exception e) {
+                System.err.printf("Error running check %s: %s%n", checker.name(), e.getMessage());
+                return new CheckerResult("Check " + checker.name(), List.of(
+                        new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, checker.name(),
+                                "Check completes without error", String.valueOf(e.getMessage()))));
+            }
         }
 
-        public String logOutput() {
-            var log = new StringBuilder();
-            log.append("Result").append(results.size() > 1 ? "s" : "").append(" from ").append(title).append("\n");
-            results.forEach(r -> {
-                if (!r.command.isEmpty()) {
-                    log.append("\n\t")
-                        .append(r.command.trim());
-                }
-                log.append("\n\t\tStatus: ").append(r.resultStatus);
-                log.append("\n\t\tExpected: ")
-                    .append("\n\t\t\t").append(r.expected.isEmpty() ? "-" : r.expected.trim());
-                log.append("\n\t\tResult: ")
-                    .append(r.result.isEmpty() ? "\n\t\t\t-" : Arrays.stream(r.result.trim().split("\n"))
-                        .map(l -> "\n\t\t\t" + l)
-                        .collect(Collectors.joining()));
-                log.append("\n");
-            });
-            return log.toString();
+        private static CheckerResult await(Checker checker, Future<CheckerResult> future) {
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                return new CheckerResult("Check " + checker.name(), List.of(
+                        new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, checker.name(),
+                                "Check completes without error", String.valueOf(e.getCause().getMessage()))));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for check " + checker.name(), e);
+            }
         }
     }
 
-    static class BaseChecker {
-        static CheckerResult.Check detectWithCommand(String command, String expectedOutput) {
+    /**
+     * Writes results as NDJSON: one JSON object per {@link CheckerResult.Check} on its own line, for tools that
+     * collect results of many boards. The lines of a check are written as soon as it completes, so the lines of
+     * different checks can be in another order than the text output. Values are escaped directly into the
+     * buffered writer, without building a string per line.
+     *
+     * <p>Example line:</p>
+     * <pre>{"check":"i2c","title":"I2C Detection","status":"PASS","command":"...","expected":"...","result":"...","elapsedUs":1520,"durationUs":310}</pre>
+     * <p>{@code elapsedUs} is the time since the start of the run until the entry was completed,
+     * {@code durationUs} the time since the start of its check or since the previous entry of the same check.</p>
+     */
+    static class NdjsonWriter implements CheckerScheduler.CompletionListener {
+        private final Writer out;
+        private final long start = System.nanoTime();
+
+        NdjsonWriter(OutputStream out) {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public synchronized void completed(Checker checker, CheckerResult result, long startedAt) {
             try {
-                var output = CommandExecutor.execute(command);
-                if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
-                    return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE, "Info returned by '" + command + "'",
-                            expectedOutput, output.getOutputMessage());
+                long previous = startedAt;
+                for (var check : result.results()) {
+                    out.write("{\"check\":");
+                    string(checker.name());
+                    out.write(",\"title\":");
+                    string(result.title());
+                    out.write(",\"status\":\"");
+                    out.write(check.resultStatus().name());
+                    out.write("\",\"command\":");
+                    string(check.command().trim());
+                    out.write(",\"expected\":");
+                    string(check.expected().trim());
+                    out.write(",\"result\":");
+                    string(check.result().trim());
+                    out.write(",\"elapsedUs\":");
+                    out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(check.completedAt() - start)));
+                    out.write(",\"durationUs\":");
+                    out.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(Math.max(0, check.completedAt() - previous))));
+                    out.write("}\n");
+                    previous = check.completedAt();
                 }
-            } catch (Exception e) {
-                System.out.printf("Error detecting SPI devices with command '{}': {}", command, e.getMessage());
+                out.flush();
+            } catch (IOException e) {
+                System.err.printf("Could not write result of %s: %s%n", checker.name(), e.getMessage());
             }
-            return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE, "No info returned by '" + command + "'", expectedOutput, "");
         }
 
-        protected static CheckerResult.Check detectConfigSetting(String setting, String interfaceName, String expectedOutput) {
-            var result = new StringBuilder();
-            String[] configPaths = {"/boot/config.txt", "/boot/firmware/config.txt"};
-            boolean foundAny = false;
-
-            for (String configPath : configPaths) {
-                try {
-                    Path path = Paths.get(configPath);
-                    if (Files.exists(path)) {
-                        List<String> lines = Files.readAllLines(path);
-
-                        for (String line : lines) {
-                            if (line.contains(setting) && !line.startsWith("#")) {
-                                result.append("Found in ").append(configPath).append(": ").append(line.trim()).append("\n");
-                                foundAny = true;
-                            }
+        private void string(String value) throws IOException {
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"' -> out.write("\\\"");
+                    case '\\' -> out.write("\\\\");
+                    case '\n' -> out.write("\\n");
+                    case '\r' -> out.write("\\r");
+                    case '\t' -> out.write("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            out.write("\\u00");
+                            out.write(Character.forDigit(c >> 4, 16));
+                            out.write(Character.forDigit(c & 0xF, 16));
+                        } else {
+                            out.write(c);
                         }
                     }
+                }
+            }
+            out.write('"');
+        }
+    }
+
+    /**
+     * Cache of the results of the inventory checks, for tools that run the checker several times during the same
+     * boot. The cache is written to a tmpfs, e.g. {@code /run/user/1000}, so it never survives a reboot, and is
+     * only used while its key still matches:
+     * <ul>
+     *     <li>the boot ID in {@code /proc/sys/kernel/random/boot_id}</li>
+     *     <li>the modification time of each config.txt</li>
+     *     <li>the change time of {@code /dev}, which changes when a device node is created or removed</li>
+     *     <li>the {@code iochecker.*} system properties, which change how the checks probe the hardware</li>
+     * </ul>
+     * Only the results of the checks that are {@link Checker#isCacheable()} are stored. The results are only
+     * taken from the cache when all selected checks are in it, otherwise all selected checks are run again.
+     *
+     * <p>The file uses the same binary layout as a device-tree snapshot: a magic number and version, followed by
+     * length-prefixed strings, so it is read with a single buffered stream and without any parsing.</p>
+     */
+    static class InventoryCache {
+        static final Path BOOT_ID = Paths.get("/proc/sys/kernel/random/boot_id");
+
+        private static final int CACHE_MAGIC = 0x494F4343; // "IOCC"
+        private static final int CACHE_VERSION = 2;
+
+        /**
+         * @param bootId         the boot ID, a UUID
+         * @param configTimes    the paths and modification times in milliseconds of the config files at
+         *                       {@link BootConfig#DEFAULT_PATHS} and all files they include, sorted, -1 for a
+         *                       missing include
+         * @param devChangeTime  the change time of /dev in milliseconds
+         * @param properties     the {@code iochecker.*} system properties, sorted
+         */
+        record Key(String bootId, List<String> configTimes, long devChangeTime, String properties) {
+            /**
+             * @return the key of the current state, or empty if there is no boot ID, e.g. when not on Linux
+             */
+            static Optional<Key> current() {
+                try {
+                    var bootId = Files.readString(BOOT_ID).trim();
+                    // The parsed files are cached, so the checks don't parse them again
+                    var configTimes = BootConfig.loadDefault().stream()
+                            .flatMap(config -> config.files().entrySet().stream())
+                            .map(file -> file.getKey() + " "
+                                    + (file.getValue() != null ? file.getValue().toMillis() : -1L))
+                            .sorted()
+                            .toList();
+                    var devChangeTime = ((FileTime) Files.getAttribute(WatchMode.DEV, "unix:ctime")).toMillis();
+                    var properties = System.getProperties().stringPropertyNames().stream()
+                            .filter(name -> name.startsWith("iochecker."))
+                            .sorted()
+                            .map(name -> name + "=" + System.getProperty(name))
+                            .collect(Collectors.joining("\n"));
+                    return Optional.of(new Key(bootId, configTimes, devChangeTime, properties));
+                } catch (IOException | UnsupportedOperationException e) {
+                    return Optional.empty();
+                }
+            }
+        }
+
+        private final Path file;
+        private final Key key;
+
+        InventoryCache(Path file, Key key) {
+            this.file = file;
+            this.key = key;
+        }
+
+        /**
+         * Opens the cache in the tmpfs of the user, {@code $XDG_RUNTIME_DIR} or else {@code /dev/shm}. The
+         * directory can be changed with {@code -Diochecker.cache.dir=...}.
+         *
+         * <p>/dev/shm can be written by every user, so the cache is kept in a subdirectory that only the current
+         * user can access. When that directory already exists but belongs to another user, or can be accessed by
+         * others, e.g. because another user created it first, the cache isn't used.</p>
+         *
+         * @return the cache, or empty if there is no tmpfs or boot ID, or no private directory
+         */
+        static Optional<InventoryCache> open() {
+            var base = Optional.ofNullable(System.getProperty("iochecker.cache.dir"))
+                    .or(() -> Optional.ofNullable(System.getenv("XDG_RUNTIME_DIR")))
+                    .map(Paths::get)
+                    .orElse(Paths.get("/dev/shm"));
+            if (!Files.isDirectory(base)) {
+                return Optional.empty();
+            }
+            var dir = base.resolve("pi4j-iochecker-" + System.getProperty("user.name"));
+            try {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(
+                        EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE,
+                                PosixFilePermission.OWNER_EXECUTE)));
+            } catch (FileAlreadyExistsException e) {
+                // Checked below
+            } catch (IOException | UnsupportedOperationException e) {
+                return Optional.empty();
+            }
+            if (!isPrivate(dir, true)) {
+                System.err.printf("Not using inventory cache %s, as it is not private to the current user%n", dir);
+                return Optional.empty();
+            }
+            return Key.current().map(key -> new InventoryCache(dir.resolve("inventory.cache"), key));
+        }
+
+        /**
+         * @param path      the file or directory, which isn't followed if it is a symbolic link
+         * @param directory {@code true} if the path must be a directory that only the owner can access, else a
+         *                  regular file that only the owner can write
+         * @return {@code true} if the path is owned by the current user, and not accessible to others as described
+         */
+        static boolean isPrivate(Path path, boolean directory) {
+            try {
+                var attributes = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                var user = path.getFileSystem().getUserPrincipalLookupService()
+                        .lookupPrincipalByName(System.getProperty("user.name"));
+                var permissions = attributes.permissions();
+                var forbidden = directory
+                        ? EnumSet.complementOf(EnumSet.of(PosixFilePermission.OWNER_READ,
+                                PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE))
+                        : EnumSet.of(PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE);
+                return (directory ? attributes.isDirectory() : attributes.isRegularFile())
+                        && attributes.owner().equals(user)
+                        && permissions.stream().noneMatch(forbidden::contains);
+            } catch (IOException | UnsupportedOperationException e) {
+                return false;
+            }
+        }
+
+        public Path file() {
+            return file;
+        }
+
+        /**
+         * @param checkers the selected checks, in output order
+         * @return the cached results in the same order, or empty if a check is not cacheable, or not in the
+         *         cache, or the key of the cache doesn't match anymore
+         */
+        Optional<List<CheckerResult>> load(List<Checker> checkers) {
+            if (checkers.isEmpty() || !checkers.stream().allMatch(Checker::isCacheable)) {
+                return Optional.empty();
+            }
+            var cached = read();
+            var results = new ArrayList<CheckerResult>();
+            for (Checker checker : checkers) {
+                var result = cached.get(checker.name());
+                if (result == null) {
+                    return Optional.empty();
+                }
+                results.add(result);
+            }
+            return Optional.of(results);
+        }
+
+        /**
+         * Adds the results of the cacheable checks to the cache, replacing older results of the same checks.
+         * The file is replaced atomically, so a concurrent run never reads a partial file.
+         *
+         * @param checkers the checks that were run, in output order
+         * @param results  their results, in the same order
+         */
+        void store(List<Checker> checkers, List<CheckerResult> results) {
+            var entries = new LinkedHashMap<>(read());
+            for (int i = 0; i < checkers.size(); i++) {
+                if (checkers.get(i).isCacheable()) {
+                    entries.put(checkers.get(i).name(), results.get(i));
+                }
+            }
+            if (entries.isEmpty()) {
+                return;
+            }
+
+            Path temp = null;
+            try {
+                temp = Files.createTempFile(file.getParent(), "inventory", ".tmp");
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(CACHE_MAGIC);
+                    out.writeInt(CACHE_VERSION);
+                    writeKey(out, key);
+                    out.writeInt(entries.size());
+                    for (var entry : entries.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        writeString(out, entry.getValue().title());
+                        out.writeInt(entry.getValue().results().size());
+                        for (var check : entry.getValue().results()) {
+                            out.writeByte(check.resultStatus().ordinal());
+                            writeString(out, check.command());
+                            writeString(out, check.expected());
+                            writeString(out, check.result());
+                        }
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.printf("Could not write inventory cache %s: %s%n", file, e.getMessage());
+                try {
+                    if (temp != null) {
+                        Files.deleteIfExists(temp);
+                    }
+                } catch (IOException ignored) {
+                    // Nothing left to clean up
+                }
+            }
+        }
+
+        /**
+         * @return the cached results by check name, empty if there is no cache file or its key doesn't match
+         */
+        private Map<String, CheckerResult> read() {
+            if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+                return Map.of();
+            }
+            if (!isPrivate(file, false)) {
+                System.err.printf("Ignoring inventory cache %s, as it is not private to the current user%n", file);
+                return Map.of();
+            }
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION || !key.equals(readKey(in))) {
+                    return Map.of();
+                }
+                var statuses = CheckerResult.ResultStatus.values();
+                var entries = new LinkedHashMap<String, CheckerResult>();
+                int entryCount = in.readInt();
+                for (int i = 0; i < entryCount; i++) {
+                    var name = in.readUTF();
+                    var title = readString(in);
+                    var checks = new ArrayList<CheckerResult.Check>();
+                    int checkCount = in.readInt();
+                    for (int j = 0; j < checkCount; j++) {
+                        checks.add(new CheckerResult.Check(statuses[in.readUnsignedByte()],
+                                readString(in), readString(in), readString(in)));
+                    }
+                    entries.put(name, new CheckerResult(title, List.copyOf(checks)));
+                }
+                return entries;
+            } catch (IOException | RuntimeException e) {
+                System.err.printf("Ignoring invalid inventory cache %s: %s%n", file, e.getMessage());
+                return Map.of();
+            }
+        }
+
+        private static void writeKey(DataOutputStream out, Key key) throws IOException {
+            out.writeUTF(key.bootId());
+            out.writeInt(key.configTimes().size());
+            for (var time : key.configTimes()) {
+                writeString(out, time);
+            }
+            out.writeLong(key.devChangeTime());
+            writeString(out, key.properties());
+        }
+
+        private static Key readKey(DataInputStream in) throws IOException {
+            var bootId = in.readUTF();
+            var configTimes = new ArrayList<String>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                configTimes.add(readString(in));
+            }
+            return new Key(bootId, List.copyOf(configTimes), in.readLong(), readString(in));
+        }
+
+        /**
+         * Strings are written as length and UTF-8 bytes, as the output of a check can be longer than the
+         * 64 KB {@link DataOutputStream#writeUTF(String)} allows.
+         */
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String readString(DataInputStream in) throws IOException {
+            var bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    static class CommandExecutor {
+        private static final Duration COMMAND_TIMEOUT = Duration.ofSeconds(30);
+        private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(1);
+
+        /**
+         * Source of a line of output delivered to a {@link LineConsumer}.
+         */
+        enum Source {
+            STDOUT, STDERR
+        }
+
+        /**
+         * Receives the output of a command line by line.
+         */
+        @FunctionalInterface
+        interface LineConsumer {
+            /**
+             * Called for each line of output. Calls are never concurrent, also not for lines of different sources.
+             *
+             * @param source the stream the line was read from
+             * @param line   the line, without line separator
+             * @return {@code true} to continue, {@code false} to stop the process because no more output is needed
+             */
+            boolean accept(Source source, String line);
+        }
+
+        /**
+         * Executes a given command and captures its output and error streams.
+         *
+         * <p>Please be careful when using this method. Since we decided to remove the
+         * 'sh -c' part, this method no longer supports pipes, redirection, or other
+         * shell-specific features. Only simple, direct commands should be executed.</p>
+         *
+         * @param command The command to execute (must be simple, direct command without shell features).
+         * @return A {@link CommandResult} containing:
+         *         - {@code success}: true if the command executed successfully within the timeout.
+         *         - {@code outputMessage}: the standard output from the command.
+         *         - {@code errorMessage}: the error output or any exception message.
+         */
+        public static CommandResult execute(String command) {
+            var output = new StringBuilder();
+            var error = new StringBuilder();
+
+            var result = stream(command, (source, line) -> {
+                (source == Source.STDOUT ? output : error).append(line).append(System.lineSeparator());
+                return true;
+            });
+
+            if (!result.isSuccess()) {
+                return result;
+            }
+
+            var errorMessage = error.toString().trim(); // Trim trailing line separator.
+            if (!errorMessage.isEmpty()) {
+                System.err.printf("Failed to execute command '%s': %s%n", command, errorMessage);
+                return CommandResult.failure(errorMessage);
+            }
+
+            return CommandResult.success(output.toString().trim());
+        }
+
+        /**
+         * Executes a given command with the default timeout and delivers its output line by line.
+         *
+         * @see #stream(String, Duration, LineConsumer)
+         */
+        public static CommandResult stream(String command, LineConsumer consumer) {
+            return stream(command, COMMAND_TIMEOUT, consumer);
+        }
+
+        /**
+         * Executes a given command and delivers its output line by line, while it is running.
+         *
+         * <p>The standard output and error streams are drained at the same time, on separate virtual threads,
+         * so a command filling one of the pipes can never block. The timeout is counted from the start of the
+         * process. Same as {@link #execute(String)}, no shell features are supported.</p>
+         *
+         * @param command  The command to execute (must be simple, direct command without shell features).
+         * @param timeout  Maximum duration of the command, after which it is killed.
+         * @param consumer Receives each line of output, and can stop the process when it has what it needs.
+         * @return A {@link CommandResult} which is successful if the process ended, or was stopped by the
+         *         consumer, within the timeout and all of its output was read. The output itself is only
+         *         passed to the consumer.
+         */
+        public static CommandResult stream(String command, Duration timeout, LineConsumer consumer) {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            var stopped = new AtomicBoolean(false);
+            var lock = new ReentrantLock();
+            Process process;
+
+            // Configure the process builder with the command (no shell involved).
+            try {
+                process = new ProcessBuilder(command.split(" ")).start();
+            } catch (IOException ex) {
+                var errorMessage = "IOException while executing command: " + ex.getMessage();
+                System.err.printf("Failed to execute command '%s': %s%n", command, errorMessage);
+                return CommandResult.failure(errorMessage);
+            }
+
+            LineConsumer guarded = (source, line) -> {
+                lock.lock();
+                try {
+                    if (stopped.get()) {
+                        return false;
+                    }
+                    if (!consumer.accept(source, line)) {
+                        stopped.set(true);
+                        process.destroy();
+                        return false;
+                    }
+                    return true;
+                } finally {
+                    lock.unlock();
+                }
+            };
+
+            var stdout = drain(process.getInputStream(), Source.STDOUT, guarded, stopped);
+            var stderr = drain(process.getErrorStream(), Source.STDERR, guarded, stopped);
+
+            try {
+                boolean finished = process.waitFor(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+
+                if (!finished) {
+                    stop(stopped, lock);
+                    process.destroyForcibly();
+                    var errorMessage = "Process timeout after " + timeout.toMillis() + " ms.";
+                    System.err.printf("Failed to execute command '%s': %s%n", command, errorMessage);
+                    return CommandResult.failure(errorMessage);
+                }
+
+                // The process has ended, so the pipes are at their end, unless a child process still holds them.
+                stdout.join(DRAIN_TIMEOUT);
+                stderr.join(DRAIN_TIMEOUT);
+
+                if (stdout.isAlive() || stderr.isAlive()) {
+                    // Whatever the drain threads still read is discarded, the consumer must not be called anymore.
+                    stop(stopped, lock);
+                    stdout.interrupt();
+                    stderr.interrupt();
+                    var errorMessage = "Output incomplete, the output streams were still open "
+                            + DRAIN_TIMEOUT.toMillis() + " ms after the process ended.";
+                    System.err.printf("Failed to execute command '%s': %s%n", command, errorMessage);
+                    return CommandResult.failure(errorMessage);
+                }
+            } catch (InterruptedException ex) {
+                stop(stopped, lock);
+                process.destroyForcibly();
+                Thread.currentThread().interrupt(); // Restore the interrupted status.
+                var errorMessage = "InterruptedException during command execution: " + ex.getMessage();
+                System.err.printf("Failed to execute command '%s': %s%n", command, errorMessage);
+                return CommandResult.failure(errorMessage);
+            }
+
+            return CommandResult.success("");
+        }
+
+        /**
+         * Makes sure the consumer is not called anymore. Takes the lock, so a call in progress has returned
+         * when this method returns.
+         */
+        private static void stop(AtomicBoolean stopped, ReentrantLock lock) {
+            lock.lock();
+            try {
+                stopped.set(true);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Reads the lines of an InputStream on a virtual thread and passes them to the consumer.
+         * After the consumer asked to stop, the remaining output is read and discarded,
+         * so the process never blocks on a full pipe.
+         *
+         * @param inputStream The InputStream to read.
+         * @param source      The source to report to the consumer.
+         * @param consumer    The consumer of the lines.
+         * @param stopped     Whether the process was stopped on request of the consumer, which closes the stream.
+         * @return The thread reading the stream.
+         */
+        private static Thread drain(InputStream inputStream, Source source, LineConsumer consumer, AtomicBoolean stopped) {
+            return Thread.ofVirtual().name("drain-" + source.name().toLowerCase()).start(() -> {
+                try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream))) {
+                    boolean forward = true;
+                    String line;
+                    while ((line = bufferedReader.readLine()) != null) {
+                        if (forward) {
+                            forward = consumer.accept(source, line);
+                        }
+                    }
+                } catch (IOException ex) {
+                    if (!stopped.get()) {
+                        System.err.printf("Error reading stream: %s%n", ex.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    static class CommandResult {
+        private final boolean success;
+        private final String outputMessage;
+        private final String errorMessage;
+
+        /**
+         * Constructor to create a new CommandResult.
+         *
+         * @param success       Whether the command execution was successful.
+         * @param outputMessage The standard output of the command.
+         * @param errorMessage  The error message if the command failed.
+         */
+        private CommandResult(boolean success, String outputMessage, String errorMessage) {
+            this.success = success;
+            this.outputMessage = Optional.ofNullable(outputMessage).orElse("");
+            this.errorMessage = Optional.ofNullable(errorMessage).orElse("");
+        }
+
+        /**
+         * Static method to create a successful CommandResult.
+         *
+         * @param outputMessage The standard output of the successful command.
+         * @return A CommandResult representing a successful command execution.
+         */
+        public static CommandResult success(String outputMessage) {
+            return new CommandResult(true, outputMessage, null);
+        }
+
+        /**
+         * Static method to create a failed CommandResult.
+         *
+         * @param errorMessage The error message from the failed command execution.
+         * @return A CommandResult representing a failed command execution.
+         */
+        public static CommandResult failure(String errorMessage) {
+            return new CommandResult(false, null, errorMessage);
+        }
+
+        /**
+         * Returns whether the command execution was successful.
+         *
+         * @return {@code true} if successful, {@code false} otherwise.
+         */
+        public boolean isSuccess() {
+            return success;
+        }
+
+        /**
+         * Returns the standard output message from the command.
+         *
+         * @return The standard output message.
+         */
+        public String getOutputMessage() {
+            return outputMessage;
+        }
+
+        /**
+         * Returns the error message from the command execution.
+         *
+         * @return The error message.
+         */
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        /**
+         * Provides a string representation of the CommandResult object.
+         * Useful for logging and debugging.
+         *
+         * @return A string describing the CommandResult.
+         */
+        @Override
+        public String toString() {
+            return String.format("CommandResult{success=%b, outputMessage='%s', errorMessage='%s'}",
+                    success, outputMessage, errorMessage);
+        }
+
+        /**
+         * Compares this CommandResult to another object for equality.
+         *
+         * @param o The object to compare to.
+         * @return {@code true} if the objects are equal, {@code false} otherwise.
+         */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CommandResult that = (CommandResult) o;
+            return success == that.success &&
+                    Objects.equals(outputMessage, that.outputMessage) &&
+                    Objects.equals(errorMessage, that.errorMessage);
+        }
+
+        /**
+         * Returns a hash code value for this CommandResult.
+         *
+         * @return The hash code for this object.
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(success, outputMessage, errorMessage);
+        }
+    }
+
+    /**
+     * Histogram of latencies in nanoseconds, with buckets of about 3% width, similar to HdrHistogram.
+     * Recording doesn't allocate, so it can be called in the measured loop of a benchmark.
+     * Not thread-safe, use one recorder per thread and {@link #add(LatencyRecorder)} them afterward.
+     */
+    static class LatencyRecorder {
+        private static final int SUB_BUCKETS = 32;
+        private static final int LINEAR = 2 * SUB_BUCKETS;
+        private static final int BUCKETS = LINEAR + (63 - 6) * SUB_BUCKETS;
+
+        private final long[] counts = new long[BUCKETS];
+        private long count;
+        private long total;
+        private long max;
+
+        public void record(long nanos) {
+            counts[index(Math.max(0, nanos))]++;
+            count++;
+            total += nanos;
+            max = Math.max(max, nanos);
+        }
+
+        public void add(LatencyRecorder other) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            total += other.total;
+            max = Math.max(max, other.max);
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long max() {
+            return max;
+        }
+
+        public long mean() {
+            return count == 0 ? 0 : total / count;
+        }
+
+        /**
+         * @param percentile e.g. 99.9
+         * @return the upper bound of the bucket that holds the value at the percentile, but never more than
+         *         the maximum
+         */
+        public long percentile(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max, lowerBound(i + 1) - 1);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Formats the summary, e.g. "p50 120.5 us, p99 180.2 us, p99.9 1.2 ms, max 3.4 ms"
+         */
+        public String format() {
+            return "p50 " + formatNanos(percentile(50)) + ", p99 " + formatNanos(percentile(99))
+                    + ", p99.9 " + formatNanos(percentile(99.9)) + ", max " + formatNanos(max);
+        }
+
+        static String formatNanos(long nanos) {
+            if (nanos < 1_000) {
+                return nanos + " ns";
+            } else if (nanos < 1_000_000) {
+                return String.format("%.1f us", nanos / 1_000.0);
+            } else if (nanos < 1_000_000_000) {
+                return String.format("%.1f ms", nanos / 1_000_000.0);
+            }
+            return String.format("%.2f s", nanos / 1_000_000_000.0);
+        }
+
+        /**
+         * Values below 64 get their own bucket, larger values are split into 32 buckets per power of two.
+         */
+        static int index(long value) {
+            if (value < LINEAR) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+            return LINEAR + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+        }
+
+        static long lowerBound(int index) {
+            if (index < LINEAR) {
+                return index;
+            }
+            int shift = (index - LINEAR) / SUB_BUCKETS + 1;
+            long mantissa = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+            return mantissa << shift;
+        }
+    }
+
+    /**
+     * Settings shared by the benchmark checks, which only run when they are selected by name.
+     *
+     * @param warmup   how long to run before measuring, to let the JIT compile the code and the device settle
+     * @param duration how long to measure
+     */
+    record BenchmarkOptions(Duration warmup, Duration duration) {
+        static final BenchmarkOptions DEFAULT = new BenchmarkOptions(Duration.ofSeconds(1), Duration.ofSeconds(3));
+
+        /**
+         * Reads the options from the system properties {@code iochecker.bench.warmup} and
+         * {@code iochecker.bench.duration}, both in milliseconds, e.g.
+         * {@code jbang -Diochecker.bench.duration=10000 IOChecker.java sensor-bench}.
+         */
+        static BenchmarkOptions fromSystemProperties() {
+            return new BenchmarkOptions(
+                    Duration.ofMillis(Long.getLong("iochecker.bench.warmup", DEFAULT.warmup().toMillis())),
+                    Duration.ofMillis(Long.getLong("iochecker.bench.duration", DEFAULT.duration().toMillis())));
+        }
+
+        /**
+         * Formats a rate, e.g. "1234.5/s"
+         */
+        static String formatRate(long operations, long nanos) {
+            return String.format("%.1f/s", nanos == 0 ? 0 : operations * 1_000_000_000.0 / nanos);
+        }
+    }
+
+    /**
+     * Helpers for the parsers of command output, which scan the characters in place instead of splitting the text
+     * with regular expressions. Each of these runs on every boot, where a Pi Zero 2 spends most of the time on the CPU.
+     */
+    static class TextScanner {
+        /**
+         * @return index of the first occurrence of the character between from and to, or to if there is none
+         */
+        static int indexOf(CharSequence text, char c, int from, int to) {
+            while (from < to && text.charAt(from) != c) {
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * @return index of the first character between from and to that is not whitespace, or to if there is none
+         */
+        static int skipWhitespace(CharSequence text, int from, int to) {
+            while (from < to && Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * @return index of the first whitespace character between from and to, or to if there is none
+         */
+        static int tokenEnd(CharSequence text, int from, int to) {
+            while (from < to && !Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * @return index after the last character between from and to that is not whitespace, or from if there is none
+         */
+        static int trimEnd(CharSequence text, int from, int to) {
+            while (to > from && Character.isWhitespace(text.charAt(to - 1))) {
+                to--;
+            }
+            return to;
+        }
+
+        /**
+         * @return {@code true} if the text contains the prefix at the given index
+         */
+        static boolean startsWith(CharSequence text, int from, int to, String prefix) {
+            if (to - from < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (text.charAt(from + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return value of the hexadecimal digit, or -1 if the character is not one
+         */
+        static int hexDigit(char c) {
+            if (c >= '0' && c <= '9') {
+                return c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                return c - 'a' + 10;
+            } else if (c >= 'A' && c <= 'F') {
+                return c - 'A' + 10;
+            }
+            return -1;
+        }
+    }
+
+    static class HexFormatter {
+        private static final HexFormat HEX = HexFormat.of().withUpperCase();
+        private static final HexFormat HEX_ARRAY = HexFormat.ofDelimiter(", ").withUpperCase().withPrefix("0x");
+
+        /**
+         * Formats a single byte value to hex format, e.g. 0xFF
+         *
+         * @param value byte value to format
+         * @return hex formatted byte value
+         */
+        public static String format(byte value) {
+            return "0x" + HEX.toHexDigits(value);
+        }
+
+        /**
+         * Formats byte array to hex format, e.g. [0x01, 0xFF]
+         *
+         * @param value byte array to format
+         * @return hex formatted byte array
+         */
+        public static String format(byte[] value) {
+            return HEX_ARRAY.formatHex(value);
+        }
+    }
+
+    /**
+     * Pi4J contexts shared by all checks. Creating a context loads and initializes all providers, which is the
+     * most expensive step of a Pi4J based check, so each context is created only once, on first use, and shut
+     * down by {@link #shutdown()} when all checks are completed.
+     */
+    static class Pi4JContexts {
+        private static final Map<Set<String>, Context> CONTEXTS = new ConcurrentHashMap<>();
+
+        /**
+         * Returns the shared context with all providers that are detected on the class path.
+         *
+         * @return the shared context
+         */
+        public static Context shared() {
+            return forProviders(Set.of());
+        }
+
+        /**
+         * Returns a shared context with only the given providers, for checks that don't need all of them.
+         * Falls back to the context with all providers if one of them can't be loaded.
+         *
+         * @param providerClassNames fully qualified class names of the providers, if empty all detected
+         *                           providers are loaded
+         * @return the shared context for these providers
+         */
+        public static Context forProviders(Set<String> providerClassNames) {
+            var context = CONTEXTS.computeIfAbsent(Set.copyOf(providerClassNames), Pi4JContexts::create);
+            return context != null ? context : shared();
+        }
+
+        /**
+         * Returns a shared context with the providers listed, comma separated, in the given system property,
+         * e.g. {@code -Diochecker.pi4j.providers.i2c=com.pi4j.plugin.linuxfs.provider.i2c.LinuxFsI2CProviderImpl},
+         * or the context with all providers if the property is not set.
+         *
+         * @param property name of the system property
+         * @return the shared context for these providers
+         */
+        public static Context fromProperty(String property) {
+            var providers = System.getProperty(property, "").trim();
+            return forProviders(providers.isEmpty() ? Set.of() : Set.of(providers.split("\\s*,\\s*")));
+        }
+
+        private static Context create(Set<String> providerClassNames) {
+            if (providerClassNames.isEmpty()) {
+                return Pi4J.newAutoContext();
+            }
+
+            try {
+                var providers = new ArrayList<Provider>();
+                for (String className : providerClassNames) {
+                    providers.add((Provider) Class.forName(className).getDeclaredConstructor().newInstance());
+                }
+                return Pi4J.newContextBuilder()
+                        .noAutoDetect()
+                        .add(providers.toArray(Provider[]::new))
+                        .build();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                System.err.printf("Could not load Pi4J providers %s, using all providers: %s%n",
+                        providerClassNames, e.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Shuts down all contexts that were created.
+         */
+        public static void shutdown() {
+            var contexts = new HashSet<>(CONTEXTS.values());
+            CONTEXTS.clear();
+            for (Context context : contexts) {
+                try {
+                    context.shutdown();
+                } catch (Exception e) {
+                    System.err.printf("Error shutting down Pi4J context: %s%n", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Parsed config.txt of the Raspberry Pi firmware, indexed by parameter, overlay and setting name.
+     *
+     * <p>The file is parsed the same way as by the firmware: conditional sections like {@code [pi4]} are resolved
+     * for the detected board, {@code include} directives are followed, and a {@code dtparam} after a
+     * {@code dtoverlay} belongs to that overlay, until the next {@code dtoverlay} line. Entries in sections that
+     * don't apply to this board are kept, but marked as inactive.</p>
+     *
+     * <p>Parsed files are cached by modification time, so repeated and concurrent checks share one instance.</p>
+     */
+    static class BootConfig {
+        static final List<Path> DEFAULT_PATHS = List.of(Paths.get("/boot/config.txt"), Paths.get("/boot/firmware/config.txt"));
+
+        private static final int MAX_INCLUDE_DEPTH = 8;
+        private static final Map<Path, BootConfig> CACHE = new ConcurrentHashMap<>();
+
+        /**
+         * Filters of the conditional sections that apply to the board this runs on, based on the current
+         * {@link DeviceTreeIndex#shared()} index.
+         *
+         * @return the model filters, or {@code null} if the board is unknown, in which case all sections are
+         *         considered to apply
+         */
+        static Set<String> boardFilters() {
+            return detectBoardFilters(DeviceTreeIndex.shared().node("/")
+                    .flatMap(root -> root.string("model")).orElse(""));
+        }
+
+        /**
+         * @param file       the file containing the entry, can be an included file
+         * @param lineNumber the line number in the file
+         * @param line       the full line, trimmed
+         * @param name       the name of the parameter, overlay or setting
+         * @param value      the value, "on" for a parameter without value, the parameters for an overlay
+         * @param overlay    the overlay a dtparam belongs to, or {@code null} for the base device tree
+         * @param active     if the entry is in a section that applies to this board
+         */
+        record Entry(Path file, int lineNumber, String line, String name, String value, String overlay, boolean active) {
+            /**
+             * @return {@code false} if the value disables the parameter or setting, e.g. "off" or "0"
+             */
+            public boolean isEnabled() {
+                return switch (value.toLowerCase()) {
+                    case "off", "false", "no", "0", "disabled" -> false;
+                    default -> true;
+                };
+            }
+        }
+
+        private final Path path;
+        private final Map<Path, FileTime> modified;
+        private final Set<String> boardFilters;
+        private final Map<String, List<Entry>> params;
+        private final Map<String, List<Entry>> overlays;
+        private final Map<String, List<Entry>> overlayParams;
+        private final Map<String, List<Entry>> settings;
+
+        private BootConfig(Path path, Map<Path, FileTime> modified, Set<String> boardFilters,
+                           Map<String, List<Entry>> params, Map<String, List<Entry>> overlays,
+                           Map<String, List<Entry>> overlayParams, Map<String, List<Entry>> settings) {
+            this.path = path;
+            this.modified = modified;
+            this.boardFilters = boardFilters;
+            this.params = params;
+            this.overlays = overlays;
+            this.overlayParams = overlayParams;
+            this.settings = settings;
+        }
+
+        /**
+         * Returns the parsed config file, from the cache if neither the file nor one of its includes changed, and
+         * the board filters are the same.
+         *
+         * @param path the config file
+         * @return the parsed config file, empty if the file doesn't exist
+         */
+        static BootConfig load(Path path) {
+            return CACHE.compute(path, (p, cached) -> cached != null && cached.isCurrent() ? cached : parse(p));
+        }
+
+        /**
+         * @return the config files at the default locations that exist
+         */
+        static List<BootConfig> loadDefault() {
+            return DEFAULT_PATHS.stream()
+                    .filter(Files::exists)
+                    .map(BootConfig::load)
+                    .toList();
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * @return the config file and all files it includes, with their modification time when they were parsed,
+         *         {@code null} for an include that doesn't exist
+         */
+        public Map<Path, FileTime> files() {
+            return modified;
+        }
+
+        /**
+         * A dtparam after a dtoverlay line is applied to the overlay if the overlay defines the parameter, and else
+         * to the base device tree. Which parameters an overlay defines isn't known here, so these assignments are
+         * included, with their {@link Entry#overlay()} set.
+         *
+         * @param name the name of a base device tree parameter, e.g. "i2c_arm"
+         * @return all assignments of the parameter, in file order
+         */
+        public List<Entry> params(String name) {
+            return params.getOrDefault(name, List.of());
+        }
+
+        /**
+         * @param name the name of an overlay, e.g. "pwm-2chan"
+         * @return all lines loading the overlay, in file order
+         */
+        public List<Entry> overlays(String name) {
+            return overlays.getOrDefault(name, List.of());
+        }
+
+        /**
+         * @param name the name of an overlay, e.g. "pwm-2chan"
+         * @return the dtparam assignments following the lines loading the overlay, in file order
+         */
+        public List<Entry> overlayParams(String name) {
+            return overlayParams.getOrDefault(name, List.of());
+        }
+
+        /**
+         * @param name a setting like "enable_uart"
+         * @return all assignments of the setting, in file order
+         */
+        public List<Entry> settings(String name) {
+            return settings.getOrDefault(name, List.of());
+        }
+
+        /**
+         * @param name the name of a base device tree parameter, e.g. "i2c_arm"
+         * @return the assignment that is effective on this board, which is the last active one, also when it
+         *         follows a dtoverlay line, see {@link #params(String)}
+         */
+        public Optional<Entry> param(String name) {
+            return last(params(name));
+        }
+
+        /**
+         * @param name a setting like "enable_uart"
+         * @return the assignment that is effective on this board, which is the last active one
+         */
+        public Optional<Entry> setting(String name) {
+            return last(settings(name));
+        }
+
+        /**
+         * @return the names of all loaded overlays, also the inactive ones
+         */
+        public Set<String> overlayNames() {
+            return overlays.keySet();
+        }
+
+        private static Optional<Entry> last(List<Entry> entries) {
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                if (entries.get(i).active()) {
+                    return Optional.of(entries.get(i));
+                }
+            }
+            return Optional.empty();
+        }
+
+        private boolean isCurrent() {
+            if (!Objects.equals(boardFilters, boardFilters())) {
+                return false;
+            }
+            for (var file : modified.entrySet()) {
+                if (!Objects.equals(file.getValue(), modifiedTime(file.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static FileTime modifiedTime(Path path) {
+            try {
+                return Files.getLastModifiedTime(path);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        private static BootConfig parse(Path path) {
+            var parser = new Parser(boardFilters());
+            parser.parse(path, 0);
+            // Not Map.copyOf, a missing include has no modification time
+            return new BootConfig(path, Collections.unmodifiableMap(parser.modified), parser.boardFilters,
+                    parser.params, parser.overlays, parser.overlayParams, parser.settings);
+        }
+
+        /**
+         * State while parsing a file and its includes.
+         */
+        private static class Parser {
+            private final Set<String> boardFilters;
+            private final Map<Path, FileTime> modified = new HashMap<>();
+            private final Map<String, List<Entry>> params = new HashMap<>();
+            private final Map<String, List<Entry>> overlays = new HashMap<>();
+            private final Map<String, List<Entry>> overlayParams = new HashMap<>();
+            private final Map<String, List<Entry>> settings = new HashMap<>();
+            private boolean modelMatches = true;
+            private String overlay = null;
+
+            Parser(Set<String> boardFilters) {
+                this.boardFilters = boardFilters;
+            }
+
+            void parse(Path file, int depth) {
+                var time = modifiedTime(file);
+                modified.put(file, time);
+                if (time == null) {
+                    return;
+                }
+                if (depth > MAX_INCLUDE_DEPTH) {
+                    System.err.printf("Include depth exceeded in %s%n", file);
+                    return;
+                }
+
+                List<String> lines;
+                try {
+                    lines = Files.readAllLines(file, StandardCharsets.ISO_8859_1);
+                } catch (IOException e) {
+                    System.err.printf("Could not read config file %s: %s%n", file, e.getMessage());
+                    return;
+                }
+
+                for (int i = 0; i < lines.size(); i++) {
+                    var line = lines.get(i).trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+
+                    if (line.startsWith("[")) {
+                        parseSection(line);
+                    } else if (line.startsWith("include ") || line.startsWith("include\t")) {
+                        if (modelMatches) {
+                            parse(file.resolveSibling(line.substring(8).trim()), depth + 1);
+                        }
+                    } else {
+                        parseAssignment(file, i + 1, line);
+                    }
+                }
+            }
+
+            private void parseSection(String line) {
+                int end = line.indexOf(']');
+                var filter = (end > 0 ? line.substring(1, end) : line.substring(1)).trim().toLowerCase();
+
+                if (filter.equals("all")) {
+                    modelMatches = true;
+                } else if (filter.equals("none")) {
+                    modelMatches = false;
+                } else if (isModelFilter(filter)) {
+                    // Model filters replace each other, other filters (HDMI, EDID, gpio...) can't be evaluated here
+                    modelMatches = boardFilters == null || boardFilters.contains(filter);
+                }
+            }
+
+            private void parseAssignment(Path file, int lineNumber, String line) {
+                int equals = line.indexOf('=');
+                if (equals < 0) {
+                    return;
+                }
+                var key = line.substring(0, equals).trim();
+                var value = line.substring(equals + 1).trim();
+
+                switch (key) {
+                    case "dtoverlay", "device_tree_overlay" -> {
+                        var parts = value.split(",", 2);
+                        var name = parts[0].trim();
+                        if (name.endsWith(".dtbo")) {
+                            name = name.substring(0, name.length() - 5);
+                        }
+                        // An empty dtoverlay switches back to parameters of the base device tree
+                        overlay = name.isEmpty() ? null : name;
+                        if (overlay != null) {
+                            add(overlays, new Entry(file, lineNumber, line, name,
+                                    parts.length > 1 ? parts[1].trim() : "", null, modelMatches));
+                        }
+                    }
+                    case "dtparam", "device_tree_param" -> {
+                        for (String param : value.split(",")) {
+                            int paramEquals = param.indexOf('=');
+                            var name = (paramEquals < 0 ? param : param.substring(0, paramEquals)).trim();
+                            var paramValue = paramEquals < 0 ? "on" : param.substring(paramEquals + 1).trim();
+                            if (!name.isEmpty()) {
+                                var entry = new Entry(file, lineNumber, line, name, paramValue, overlay, modelMatches);
+                                // After a dtoverlay, the firmware applies a parameter to the base device tree when
+                                // the overlay doesn't define it, so it is indexed for both
+                                add(params, entry);
+                                if (overlay != null) {
+                                    overlayParams.computeIfAbsent(overlay, k -> new ArrayList<>()).add(entry);
+                                }
+                            }
+                        }
+                    }
+                    default -> add(settings, new Entry(file, lineNumber, line, key, value, null, modelMatches));
+                }
+            }
+
+            private static void add(Map<String, List<Entry>> index, Entry entry) {
+                index.computeIfAbsent(entry.name(), k -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        private static boolean isModelFilter(String filter) {
+            return filter.startsWith("pi") || filter.startsWith("cm");
+        }
+
+        /**
+         * Determines which model filters apply to this board, based on the model in the device tree,
+         * as described in the config.txt documentation of Raspberry Pi.
+         *
+         * @param model the model in the device tree, e.g. "Raspberry Pi 4 Model B Rev 1.4"
+         * @return the model filters, or {@code null} if this is not a known Raspberry Pi
+         */
+        static Set<String> detectBoardFilters(String model) {
+            if (model.startsWith("Raspberry Pi 500")) return Set.of("pi500", "pi5");
+            if (model.startsWith("Raspberry Pi Compute Module 5")) return Set.of("cm5", "pi5");
+            if (model.startsWith("Raspberry Pi 5")) return Set.of("pi5");
+            if (model.startsWith("Raspberry Pi 400")) return Set.of("pi400", "pi4");
+            if (model.startsWith("Raspberry Pi Compute Module 4S")) return Set.of("cm4s", "pi4");
+            if (model.startsWith("Raspberry Pi Compute Module 4")) return Set.of("cm4", "pi4");
+            if (model.startsWith("Raspberry Pi 4")) return Set.of("pi4");
+            if (model.startsWith("Raspberry Pi Compute Module 3")) return Set.of("cm3", "pi3");
+            if (model.startsWith("Raspberry Pi 3") && model.contains("Plus")) return Set.of("pi3+", "pi3");
+            if (model.startsWith("Raspberry Pi 3")) return Set.of("pi3");
+            if (model.startsWith("Raspberry Pi Zero 2")) return Set.of("pi02");
+            if (model.startsWith("Raspberry Pi Zero W")) return Set.of("pi0w", "pi0");
+            if (model.startsWith("Raspberry Pi Zero")) return Set.of("pi0");
+            if (model.startsWith("Raspberry Pi 2")) return Set.of("pi2");
+            if (model.startsWith("Raspberry Pi")) return Set.of("pi1");
+            return null;
+        }
+    }
+
+    /**
+     * Index of the device tree, built in a single traversal of /proc/device-tree.
+     *
+     * <p>Nodes are indexed by name (without unit address), by each {@code compatible} string, by {@code status}
+     * and by the first address in {@code reg}. The {@code /aliases} table is resolved to node paths. Only the
+     * properties in {@link #INDEXED_PROPERTIES} are read, as raw bytes.</p>
+     *
+     * <p>An index can be saved to a file and loaded again, so a snapshot taken on a board can be used on
+     * another machine, e.g. {@code --save-dt-snapshot=pi5.dt} on the board and {@code --dt-snapshot=pi5.dt}
+     * on the development machine.</p>
+     */
+    static class DeviceTreeIndex {
+        static final Path DEFAULT_ROOT = Paths.get("/proc/device-tree");
+        static final Set<String> INDEXED_PROPERTIES = Set.of("compatible", "status", "reg", "model",
+                "clock-frequency", "spi-max-frequency", "#address-cells", "#size-cells");
+
+        private static final int SNAPSHOT_MAGIC = 0x44544958; // "DTIX"
+        private static final int SNAPSHOT_VERSION = 1;
+
+        private static Path snapshot = null;
+        private static DeviceTreeIndex shared = null;
+
+        /**
+         * @param path       the path of the node, e.g. "/soc/i2c@7e804000", or "/" for the root
+         * @param properties the raw values of the indexed properties
+         */
+        record Node(String path, Map<String, byte[]> properties) {
+            /**
+             * @return the node name including unit address, e.g. "i2c@7e804000"
+             */
+            public String name() {
+                return path.equals("/") ? "/" : path.substring(path.lastIndexOf('/') + 1);
+            }
+
+            /**
+             * @return the node name without unit address, e.g. "i2c"
+             */
+            public String baseName() {
+                var name = name();
+                int at = name.indexOf('@');
+                return at < 0 ? name : name.substring(0, at);
+            }
+
+            public String parentPath() {
+                int slash = path.lastIndexOf('/');
+                return slash <= 0 ? "/" : path.substring(0, slash);
+            }
+
+            public Optional<byte[]> property(String name) {
+                return Optional.ofNullable(properties.get(name));
+            }
+
+            /**
+             * @return the property as string, without NUL terminator, or empty if the node doesn't have it
+             */
+            public Optional<String> string(String name) {
+                return property(name).map(DeviceTreeIndex::decodeString);
+            }
+
+            /**
+             * @return the property as single 32-bit big-endian cell, or empty if the node doesn't have it
+             */
+            public OptionalLong cell(String name) {
+                var value = properties.get(name);
+                return value == null || value.length < 4 ? OptionalLong.empty() : OptionalLong.of(readCell(value, 0));
+            }
+
+            /**
+             * @return the status, "unknown" if the node has no status property
+             */
+            public String status() {
+                return string("status").orElse("unknown");
+            }
+
+            /**
+             * @return the compatible strings, most specific first
+             */
+            public List<String> compatible() {
+                return property("compatible").map(DeviceTreeIndex::decodeStrings).orElse(List.of());
+            }
+        }
+
+        private final Path source;
+        private final Map<String, Node> nodes;
+        private final Map<String, String> aliases;
+        private final NavigableMap<String, List<Node>> byName = new TreeMap<>();
+        private final Map<String, List<Node>> byCompatible = new HashMap<>();
+        private final Map<String, List<Node>> byStatus = new HashMap<>();
+        private final Map<Long, List<Node>> byReg = new HashMap<>();
+
+        private DeviceTreeIndex(Path source, Map<String, Node> nodes, Map<String, String> aliases) {
+            this.source = source;
+            this.nodes = nodes;
+            this.aliases = aliases;
+
+            for (Node node : nodes.values()) {
+                byName.computeIfAbsent(node.baseName(), k -> new ArrayList<>()).add(node);
+                node.compatible().forEach(c -> byCompatible.computeIfAbsent(c, k -> new ArrayList<>()).add(node));
+                node.string("status").ifPresent(s -> byStatus.computeIfAbsent(s, k -> new ArrayList<>()).add(node));
+                firstRegAddress(node).ifPresent(a -> byReg.computeIfAbsent(a, k -> new ArrayList<>()).add(node));
+            }
+        }
+
+        /**
+         * Uses a snapshot instead of the live device tree for {@link #shared()}. Must be called before first use.
+         *
+         * @param path the snapshot file
+         */
+        static synchronized void useSnapshot(Path path) {
+            snapshot = path;
+            shared = null;
+        }
+
+        /**
+         * Drops the shared index of the live device tree, so it is built again on next use, e.g. in watch mode
+         * after a change of config.txt or an overlay loaded at runtime. A snapshot doesn't change, so its index is
+         * kept.
+         */
+        static synchronized void invalidate() {
+            if (snapshot == null) {
+                shared = null;
+            }
+        }
+
+        /**
+         * Returns the index shared by all checks, built on first use.
+         *
+         * @return the index of the live device tree, or of the snapshot if one is configured
+         */
+        static synchronized DeviceTreeIndex shared() {
+            if (shared == null) {
+                try {
+                    shared = snapshot != null ? load(snapshot) : build(DEFAULT_ROOT);
+                } catch (IOException e) {
+                    System.err.printf("Error reading device-tree %s: %s%n", snapshot != null ? snapshot : DEFAULT_ROOT, e.getMessage());
+                    shared = new DeviceTreeIndex(DEFAULT_ROOT, Map.of(), Map.of());
+                }
+            }
+            return shared;
+        }
+
+        /**
+         * Builds the index in one traversal of the device tree.
+         *
+         * @param root the root of the device tree, e.g. /proc/device-tree
+         * @return the index, empty if the device tree doesn't exist
+         */
+        static DeviceTreeIndex build(Path root) throws IOException {
+            var nodes = new LinkedHashMap<String, Node>();
+            var aliases = new LinkedHashMap<String, String>();
+
+            if (!Files.isDirectory(root)) {
+                return new DeviceTreeIndex(root, nodes, aliases);
+            }
+
+            var realRoot = root.toRealPath();
+            Files.walkFileTree(realRoot, new SimpleFileVisitor<>() {
+                private final Deque<Map<String, byte[]>> properties = new ArrayDeque<>();
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    properties.push(new HashMap<>());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    var name = file.getFileName().toString();
+                    boolean isAliases = file.getParent().equals(realRoot.resolve("aliases"));
+                    if (isAliases || INDEXED_PROPERTIES.contains(name)) {
+                        var value = Files.readAllBytes(file);
+                        if (isAliases) {
+                            aliases.put(name, decodeString(value));
+                        } else {
+                            properties.peek().put(name, value);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    var path = "/" + realRoot.relativize(dir).toString().replace('\\', '/');
+                    nodes.put(path.equals("/") ? "/" : path, new Node(path, Map.copyOf(properties.pop())));
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            var sorted = new TreeMap<String, Node>(nodes);
+            return new DeviceTreeIndex(root, Collections.unmodifiableMap(new LinkedHashMap<>(sorted)), Map.copyOf(aliases));
+        }
+
+        /**
+         * Loads an index saved with {@link #save(Path)}.
+         *
+         * @param file the snapshot file
+         * @return the index
+         */
+        static DeviceTreeIndex load(Path file) throws IOException {
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                    throw new IOException("Not a device-tree snapshot: " + file);
+                }
+                var nodes = new LinkedHashMap<String, Node>();
+                int nodeCount = in.readInt();
+                for (int i = 0; i < nodeCount; i++) {
+                    var path = in.readUTF();
+                    var properties = new HashMap<String, byte[]>();
+                    int propertyCount = in.readInt();
+                    for (int j = 0; j < propertyCount; j++) {
+                        var name = in.readUTF();
+                        var value = new byte[in.readInt()];
+                        in.readFully(value);
+                        properties.put(name, value);
+                    }
+                    nodes.put(path, new Node(path, Map.copyOf(properties)));
+                }
+                var aliases = new LinkedHashMap<String, String>();
+                int aliasCount = in.readInt();
+                for (int i = 0; i < aliasCount; i++) {
+                    aliases.put(in.readUTF(), in.readUTF());
+                }
+                return new DeviceTreeIndex(file, Collections.unmodifiableMap(nodes), Map.copyOf(aliases));
+            }
+        }
+
+        /**
+         * Saves this index to a file, which can be loaded again with {@link #load(Path)}.
+         *
+         * @param file the snapshot file
+         */
+        void save(Path file) throws IOException {
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeInt(nodes.size());
+                for (Node node : nodes.values()) {
+                    out.writeUTF(node.path());
+                    out.writeInt(node.properties().size());
+                    for (var property : node.properties().entrySet()) {
+                        out.writeUTF(property.getKey());
+                        out.writeInt(property.getValue().length);
+                        out.write(property.getValue());
+                    }
+                }
+                out.writeInt(aliases.size());
+                for (var alias : aliases.entrySet()) {
+                    out.writeUTF(alias.getKey());
+                    out.writeUTF(alias.getValue());
+                }
+            }
+        }
+
+        /**
+         * @return where the index was read from, the device tree root or a snapshot file
+         */
+        public Path source() {
+            return source;
+        }
+
+        public boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+
+        public Optional<Node> node(String path) {
+            return Optional.ofNullable(nodes.get(path));
+        }
+
+        public Collection<Node> nodes() {
+            return nodes.values();
+        }
+
+        /**
+         * @return the alias table, e.g. "i2c1" to "/soc/i2c@7e804000"
+         */
+        public Map<String, String> aliases() {
+            return aliases;
+        }
+
+        /**
+         * @param alias an alias, e.g. "i2c1"
+         * @return the node the alias refers to
+         */
+        public Optional<Node> alias(String alias) {
+            return Optional.ofNullable(aliases.get(alias)).map(nodes::get);
+        }
+
+        /**
+         * @param prefix start of the node name, without unit address, e.g. "i2c" for "i2c@7e804000" and "i2c0mux"
+         * @return the matching nodes
+         */
+        public List<Node> byNamePrefix(String prefix) {
+            return byName.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values().stream()
+                    .flatMap(List::stream)
+                    .toList();
+        }
+
+        public List<Node> byCompatible(String compatible) {
+            return byCompatible.getOrDefault(compatible, List.of());
+        }
+
+        public List<Node> byStatus(String status) {
+            return byStatus.getOrDefault(status, List.of());
+        }
+
+        /**
+         * @param address first address in the reg property, e.g. 0x7e804000
+         * @return the nodes at this address
+         */
+        public List<Node> byReg(long address) {
+            return byReg.getOrDefault(address, List.of());
+        }
+
+        /**
+         * @return the node of the SoC bus, e.g. "/soc" or "/soc@107c000000"
+         */
+        public Optional<Node> socNode() {
+            var root = nodes.get("/");
+            return nodes.values().stream()
+                    .filter(n -> n != root && n.parentPath().equals("/") && n.baseName().startsWith("soc"))
+                    .findFirst();
+        }
+
+        private OptionalLong firstRegAddress(Node node) {
+            var reg = node.properties().get("reg");
+            if (reg == null) {
+                return OptionalLong.empty();
+            }
+            // The number of cells of an address is defined by the parent, the default is 2
+            var parent = nodes.get(node.parentPath());
+            long addressCells = parent == null ? 2 : parent.cell("#address-cells").orElse(2);
+            if (addressCells == 1 && reg.length >= 4) {
+                return OptionalLong.of(readCell(reg, 0));
+            } else if (addressCells == 2 && reg.length >= 8) {
+                return OptionalLong.of(readCell(reg, 0) << 32 | readCell(reg, 4));
+            }
+            return OptionalLong.empty();
+        }
+
+        private static long readCell(byte[] value, int offset) {
+            return (value[offset] & 0xFFL) << 24 | (value[offset + 1] & 0xFFL) << 16
+                    | (value[offset + 2] & 0xFFL) << 8 | (value[offset + 3] & 0xFFL);
+        }
+
+        private static String decodeString(byte[] value) {
+            int length = value.length;
+            while (length > 0 && value[length - 1] == 0) {
+                length--;
+            }
+            return new String(value, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+        private static List<String> decodeStrings(byte[] value) {
+            var strings = new ArrayList<String>();
+            int start = 0;
+            for (int i = 0; i < value.length; i++) {
+                if (value[i] == 0) {
+                    if (i > start) {
+                        strings.add(new String(value, start, i - start, StandardCharsets.ISO_8859_1));
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start < value.length) {
+                strings.add(new String(value, start, value.length - start, StandardCharsets.ISO_8859_1));
+            }
+            return strings;
+        }
+    }
+
+    /**
+     * Minimal bindings to the C library with the Foreign Function & Memory API, the same way the FFM plugin of
+     * Pi4J talks to the Linux character devices. Only 64-bit Linux is supported.
+     */
+    static class LibC {
+        static final int O_RDONLY = 0;
+        static final int O_RDWR = 2;
+        static final int O_NONBLOCK = 0x800;
+        static final int O_CLOEXEC = 0x80000;
+
+        static final int EINTR = 4;
+        static final int EBUSY = 16;
+
+        static final short POLLIN = 1;
+
+        static final int O_NOCTTY = 0x100;
+        static final int TCSANOW = 0;
+
+        /**
+         * Size of struct termios of glibc, rounded up: c_iflag, c_oflag, c_cflag, c_lflag, c_line, c_cc[32],
+         * c_ispeed, c_ospeed.
+         */
+        static final long TERMIOS_SIZE = 64;
+        static final long TERMIOS_C_CC = 17;
+        static final int VTIME = 5;
+        static final int VMIN = 6;
+
+        /**
+         * The speed_t constants of termios.h, e.g. B115200, by baud rate.
+         */
+        static final Map<Integer, Integer> BAUD_RATES = Map.ofEntries(
+                Map.entry(9_600, 0x0D), Map.entry(19_200, 0x0E), Map.entry(38_400, 0x0F),
+                Map.entry(57_600, 0x1001), Map.entry(115_200, 0x1002), Map.entry(230_400, 0x1003),
+                Map.entry(460_800, 0x1004), Map.entry(500_000, 0x1005), Map.entry(576_000, 0x1006),
+                Map.entry(921_600, 0x1007), Map.entry(1_000_000, 0x1008), Map.entry(1_152_000, 0x1009),
+                Map.entry(1_500_000, 0x100A), Map.entry(2_000_000, 0x100B), Map.entry(2_500_000, 0x100C),
+                Map.entry(3_000_000, 0x100D), Map.entry(3_500_000, 0x100E), Map.entry(4_000_000, 0x100F));
+
+        private static final StructLayout CALL_STATE_LAYOUT = Linker.Option.captureStateLayout();
+        private static final VarHandle ERRNO = CALL_STATE_LAYOUT.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+        /**
+         * Captured errno of the last call, one segment per thread, so calls in a loop don't allocate.
+         */
+        private static final ThreadLocal<MemorySegment> CALL_STATE =
+                ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(CALL_STATE_LAYOUT));
+
+        /**
+         * struct pollfd for {@link #pollIn(int, int)}, one per thread like the call state.
+         */
+        private static final ThreadLocal<MemorySegment> POLL_FD = ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(8));
+
+        /**
+         * The linked functions, in a separate class so a failure to link them can be detected with {@link #isAvailable()}.
+         */
+        private static class Functions {
+            private static final Linker LINKER = Linker.nativeLinker();
+            private static final SymbolLookup LOOKUP = LINKER.defaultLookup();
+            private static final Linker.Option CAPTURE_ERRNO = Linker.Option.captureCallState("errno");
+
+            private static final MethodHandle OPEN = downcall("open",
+                    FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), CAPTURE_ERRNO);
+            private static final MethodHandle CLOSE = downcall("close",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT));
+            private static final MethodHandle IOCTL_VALUE = downcall("ioctl",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG), CAPTURE_ERRNO, Linker.Option.firstVariadicArg(2));
+            private static final MethodHandle IOCTL_POINTER = downcall("ioctl",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, ADDRESS), CAPTURE_ERRNO, Linker.Option.firstVariadicArg(2));
+            private static final MethodHandle READ = downcall("read",
+                    FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG), CAPTURE_ERRNO);
+            private static final MethodHandle POLL = downcall("poll",
+                    FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT), CAPTURE_ERRNO);
+            private static final MethodHandle WRITE = downcall("write",
+                    FunctionDescriptor.of(JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG), CAPTURE_ERRNO);
+            private static final MethodHandle POSIX_OPENPT = downcall("posix_openpt",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT), CAPTURE_ERRNO);
+            private static final MethodHandle GRANTPT = downcall("grantpt",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT), CAPTURE_ERRNO);
+            private static final MethodHandle UNLOCKPT = downcall("unlockpt",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT), CAPTURE_ERRNO);
+            private static final MethodHandle PTSNAME_R = downcall("ptsname_r",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS, JAVA_LONG));
+            private static final MethodHandle TCGETATTR = downcall("tcgetattr",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT, ADDRESS), CAPTURE_ERRNO);
+            private static final MethodHandle TCSETATTR = downcall("tcsetattr",
+                    FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS), CAPTURE_ERRNO);
+            private static final MethodHandle CFMAKERAW = downcall("cfmakeraw",
+                    FunctionDescriptor.ofVoid(ADDRESS));
+            private static final MethodHandle CFSETSPEED = downcall("cfsetspeed",
+                    FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT), CAPTURE_ERRNO);
+            private static final MethodHandle CFGETOSPEED = downcall("cfgetospeed",
+                    FunctionDescriptor.of(JAVA_INT, ADDRESS));
+            private static final MethodHandle STRERROR = downcall("strerror",
+                    FunctionDescriptor.of(ADDRESS, JAVA_INT));
+
+            private static MethodHandle downcall(String name, FunctionDescriptor descriptor, Linker.Option... options) {
+                return LOOKUP.find(name)
+                        .map(symbol -> LINKER.downcallHandle(symbol, descriptor, options))
+                        .orElseThrow(() -> new UnsatisfiedLinkError("C library function not found: " + name));
+            }
+        }
+
+        /**
+         * Checks if the bindings can be used on this system.
+         *
+         * @return {@code true} if the C library functions could be linked and native access is allowed
+         */
+        static boolean isAvailable() {
+            try {
+                return Functions.OPEN != null;
+            } catch (LinkageError | RuntimeException e) {
+                return false;
+            }
+        }
+
+        static int open(String path, int flags) throws IOException {
+            try (var arena = Arena.ofConfined()) {
+                var state = CALL_STATE.get();
+                int fd = (int) Functions.OPEN.invokeExact(state, arena.allocateFrom(path), flags);
+                if (fd < 0) {
+                    throw new NativeException("open " + path, errno(state));
+                }
+                return fd;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("Could not open " + path + ": " + e.getMessage(), e);
+            }
+        }
+
+        static void close(int fd) {
+            try {
+                int ignored = (int) Functions.CLOSE.invokeExact(fd);
+            } catch (Throwable e) {
+                System.err.printf("Could not close file descriptor %d: %s%n", fd, e.getMessage());
+            }
+        }
+
+        static int ioctl(int fd, long request, long value) throws IOException {
+            int rc = tryIoctl(fd, request, value);
+            if (rc < 0) {
+                throw new NativeException("ioctl 0x" + Long.toHexString(request), -rc);
+            }
+            return rc;
+        }
+
+        static int ioctl(int fd, long request, MemorySegment argument) throws IOException {
+            int rc = tryIoctl(fd, request, argument);
+            if (rc < 0) {
+                throw new NativeException("ioctl 0x" + Long.toHexString(request), -rc);
+            }
+            return rc;
+        }
+
+        /**
+         * Executes an ioctl with an integer argument without throwing, for use in loops where failures are expected.
+         *
+         * @return the result of the ioctl, or the negated errno if it failed
+         */
+        static int tryIoctl(int fd, long request, long value) {
+            try {
+                var state = CALL_STATE.get();
+                int rc = (int) Functions.IOCTL_VALUE.invokeExact(state, fd, request, value);
+                return rc < 0 ? -errno(state) : rc;
+            } catch (Throwable e) {
+                throw new IllegalStateException("ioctl failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Executes an ioctl with a pointer argument without throwing, for use in loops where failures are expected.
+         *
+         * @return the result of the ioctl, or the negated errno if it failed
+         */
+        static int tryIoctl(int fd, long request, MemorySegment argument) {
+            try {
+                var state = CALL_STATE.get();
+                int rc = (int) Functions.IOCTL_POINTER.invokeExact(state, fd, request, argument);
+                return rc < 0 ? -errno(state) : rc;
+            } catch (Throwable e) {
+                throw new IllegalStateException("ioctl failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Reads into the buffer, blocking until data is available.
+         *
+         * @return the number of bytes read
+         */
+        static long read(int fd, MemorySegment buffer) throws IOException {
+            try {
+                var state = CALL_STATE.get();
+                long count = (long) Functions.READ.invokeExact(state, fd, buffer, buffer.byteSize());
+                if (count < 0) {
+                    throw new NativeException("read", errno(state));
+                }
+                return count;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("read failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Writes from the buffer.
+         *
+         * @return the number of bytes written
+         */
+        static long write(int fd, MemorySegment buffer) throws IOException {
+            try {
+                var state = CALL_STATE.get();
+                long count = (long) Functions.WRITE.invokeExact(state, fd, buffer, buffer.byteSize());
+                if (count < 0) {
+                    throw new NativeException("write", errno(state));
+                }
+                return count;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("write failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Opens the master side of a new pseudo-terminal, and unlocks the slave side, of which the path is
+         * returned by {@link #ptsName(int)}.
+         *
+         * @return the file descriptor of the master side
+         */
+        static int openPty() throws IOException {
+            try {
+                var state = CALL_STATE.get();
+                int fd = (int) Functions.POSIX_OPENPT.invokeExact(state, O_RDWR | O_NOCTTY | O_CLOEXEC);
+                if (fd < 0) {
+                    throw new NativeException("posix_openpt", errno(state));
+                }
+                if ((int) Functions.GRANTPT.invokeExact(state, fd) < 0 || (int) Functions.UNLOCKPT.invokeExact(state, fd) < 0) {
+                    int errno = errno(state);
+                    close(fd);
+                    throw new NativeException("unlockpt", errno);
+                }
+                return fd;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("posix_openpt failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * @param fd the master side of a pseudo-terminal
+         * @return the path of the slave side, e.g. /dev/pts/3
+         */
+        static String ptsName(int fd) throws IOException {
+            try (var arena = Arena.ofConfined()) {
+                var name = arena.allocate(64);
+                int rc = (int) Functions.PTSNAME_R.invokeExact(fd, name, name.byteSize());
+                if (rc != 0) {
+                    throw new NativeException("ptsname_r", rc);
+                }
+                return name.getString(0);
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("ptsname_r failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Puts a terminal in raw mode, in the same way as {@code stty raw}, so bytes are passed unchanged.
+         *
+         * @param fd          the terminal
+         * @param baud        the baud rate to set, e.g. 115200, or 0 to keep the current one
+         * @param readTimeout how long a read waits for the first byte, in steps of 100 ms, before it returns 0
+         */
+        static void makeRaw(int fd, int baud, Duration readTimeout) throws IOException {
+            try (var arena = Arena.ofConfined()) {
+                var state = CALL_STATE.get();
+                var termios = arena.allocate(TERMIOS_SIZE);
+                if ((int) Functions.TCGETATTR.invokeExact(state, fd, termios) < 0) {
+                    throw new NativeException("tcgetattr", errno(state));
+                }
+                Functions.CFMAKERAW.invokeExact(termios);
+                termios.set(JAVA_BYTE, TERMIOS_C_CC + VMIN, (byte) 0);
+                termios.set(JAVA_BYTE, TERMIOS_C_CC + VTIME, (byte) Math.clamp(readTimeout.toMillis() / 100, 1, 255));
+                if (baud > 0) {
+                    var speed = BAUD_RATES.get(baud);
+                    if (speed == null || (int) Functions.CFSETSPEED.invokeExact(state, termios, (int) speed) < 0) {
+                        throw new IOException("Unsupported baud rate " + baud);
+                    }
+                }
+                if ((int) Functions.TCSETATTR.invokeExact(state, fd, TCSANOW, termios) < 0) {
+                    throw new NativeException("tcsetattr", errno(state));
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("Could not configure terminal: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * @return the output baud rate of the terminal, or 0 if unknown
+         */
+        static int baud(int fd) throws IOException {
+            try (var arena = Arena.ofConfined()) {
+                var state = CALL_STATE.get();
+                var termios = arena.allocate(TERMIOS_SIZE);
+                if ((int) Functions.TCGETATTR.invokeExact(state, fd, termios) < 0) {
+                    throw new NativeException("tcgetattr", errno(state));
+                }
+                int speed = (int) Functions.CFGETOSPEED.invokeExact(termios);
+                return BAUD_RATES.entrySet().stream()
+                        .filter(e -> e.getValue() == speed)
+                        .map(Map.Entry::getKey)
+                        .findFirst()
+                        // Newer C libraries return the baud rate itself
+                        .orElse(speed > 0x100F ? speed : 0);
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("tcgetattr failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Waits until data can be read.
+         *
+         * @param timeoutMillis maximum time to wait
+         * @return {@code true} if data can be read, {@code false} after the timeout
+         */
+        static boolean pollIn(int fd, int timeoutMillis) throws IOException {
+            try {
+                var state = CALL_STATE.get();
+                var pollFd = POLL_FD.get();
+                pollFd.set(JAVA_INT, 0, fd);
+                pollFd.set(JAVA_INT, 4, POLLIN); // events, and clears revents
+                int rc = (int) Functions.POLL.invokeExact(state, pollFd, 1L, timeoutMillis);
+                if (rc < 0 && errno(state) != EINTR) {
+                    throw new NativeException("poll", errno(state));
+                }
+                return rc > 0;
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException("poll failed: " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Reads a NUL-terminated string from a fixed size char array in a struct.
+         *
+         * @param segment   the struct
+         * @param offset    offset of the char array in the struct
+         * @param maxLength size of the char array
+         * @return the string, without the NUL terminator
+         */
+        static String string(MemorySegment segment, long offset, int maxLength) {
+            int length = 0;
+            while (length < maxLength && segment.get(JAVA_BYTE, offset + length) != 0) {
+                length++;
+            }
+            var bytes = new byte[length];
+            MemorySegment.copy(segment, JAVA_BYTE, offset, bytes, 0, length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        static String strerror(int errno) {
+            try {
+                var message = (MemorySegment) Functions.STRERROR.invokeExact(errno);
+                return message.reinterpret(256).getString(0);
+            } catch (Throwable e) {
+                return "errno " + errno;
+            }
+        }
+
+        private static int errno(MemorySegment state) {
+            return (int) ERRNO.get(state, 0L);
+        }
+    }
+
+    /**
+     * Failure of a C library call, with the errno reported by the call.
+     */
+    static class NativeException extends IOException {
+        private final int errno;
+
+        NativeException(String call, int errno) {
+            super(call + " failed: " + LibC.strerror(errno) + " (errno " + errno + ")");
+            this.errno = errno;
+        }
+
+        public int getErrno() {
+            return errno;
+        }
+    }
+
+    static record CheckerResult(String title, List<Check> results) {
+        public void addResult(Check result) {
+            results.add(result);
+        }
+
+        /**
+         * @param completedAt {@link System#nanoTime()} when the entry was created, used for the timing in the
+         *                    NDJSON output
+         */
+        public record Check(ResultStatus resultStatus, String command, String expected, String result, long completedAt) {
+            public Check(ResultStatus resultStatus, String command, String expected, String result) {
+                this(resultStatus, command, expected, result, System.nanoTime());
+            }
+        }
+
+        public enum ResultStatus {
+            PASS, FAIL, TO_EVALUATE, UNDEFINED
+        }
+
+        public String logOutput() {
+            var log = new StringBuilder();
+            log.append("Result").append(results.size() > 1 ? "s" : "").append(" from ").append(title).append("\n");
+            results.forEach(r -> {
+                if (!r.command.isEmpty()) {
+                    log.append("\n\t")
+                        .append(r.command.trim());
+                }
+                log.append("\n\t\tStatus: ").append(r.resultStatus);
+                log.append("\n\t\tExpected: ")
+                    .append("\n\t\t\t").append(r.expected.isEmpty() ? "-" : r.expected.trim());
+                log.append("\n\t\tResult: ");
+                if (r.result.isEmpty()) {
+                    log.append("\n\t\t\t-");
+                } else {
+                    appendIndented(log, r.result);
+                }
+                log.append("\n");
+            });
+            return log.toString();
+        }
+
+        /**
+         * Appends the trimmed text with each line on a new line, indented by three tabs.
+         */
+        private static void appendIndented(StringBuilder log, String text) {
+            int end = TextScanner.trimEnd(text, 0, text.length());
+            int start = TextScanner.skipWhitespace(text, 0, end);
+            while (true) {
+                int lineEnd = TextScanner.indexOf(text, '\n', start, end);
+                log.append("\n\t\t\t").append(text, start, lineEnd);
+                if (lineEnd == end) {
+                    return;
+                }
+                start = lineEnd + 1;
+            }
+        }
+    }
+
+    static class BaseChecker {
+        /**
+         * @return {@code true} if the path is a file next to one of the config.txt files, which can be included
+         */
+        protected static boolean isConfigFile(Path path) {
+            return path.getFileName() != null && path.getFileName().toString().endsWith(".txt")
+                    && BootConfig.DEFAULT_PATHS.stream().anyMatch(p -> p.getParent().equals(path.getParent()));
+        }
+
+        /**
+         * @return {@code true} if the path is a device in /dev whose name starts with one of the prefixes
+         */
+        protected static boolean isDevice(Path path, String... prefixes) {
+            return WatchMode.DEV.equals(path.getParent())
+                    && Arrays.stream(prefixes).anyMatch(prefix -> path.getFileName().toString().startsWith(prefix));
+        }
+
+        static CheckerResult.Check detectWithCommand(String command, String expectedOutput) {
+            try {
+                var output = CommandExecutor.execute(command);
+                if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
+                    return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE, "Info returned by '" + command + "'",
+                            expectedOutput, output.getOutputMessage());
+                }
+            } catch (Exception e) {
+                System.err.printf("Error detecting devices with command %s: %s%n", command, e.getMessage());
+            }
+            return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE, "No info returned by '" + command + "'", expectedOutput, "");
+        }
+
+        /**
+         * Checks if one of the given settings is enabled in config.txt.
+         *
+         * @param settings      the settings to look for, e.g. "dtparam=i2c_arm" for a device tree parameter,
+         *                      "dtoverlay=pwm" for an overlay or one of its variants like "pwm-2chan",
+         *                      or "enable_uart" for another setting
+         * @param interfaceName the name of the interface, used in the output
+         * @param expectedOutput the expected output
+         * @return PASS if one of the settings is enabled for this board
+         */
+        protected static CheckerResult.Check detectConfigSetting(List<String> settings, String interfaceName, String expectedOutput) {
+            var result = new StringBuilder();
+            boolean foundAny = false;
+
+            for (BootConfig config : BootConfig.loadDefault()) {
+                for (String setting : settings) {
+                    for (BootConfig.Entry entry : findConfigEntries(config, setting)) {
+                        if (!entry.active()) {
+                            result.append("Ignored, not for this board, in ");
+                        } else if (!entry.isEnabled()) {
+                            result.append("Disabled in ");
+                        } else {
+                            result.append("Found in ");
+                        }
+                        result.append(entry.file()).append(": ").append(entry.line()).append("\n");
+                    }
+
+                    var enabled = setting.startsWith("dtoverlay=")
+                            ? findConfigEntries(config, setting).stream().anyMatch(BootConfig.Entry::active)
+                            : findEffectiveConfigEntry(config, setting).filter(BootConfig.Entry::isEnabled).isPresent();
+                    foundAny |= enabled;
+                }
+            }
+
+            var command = "Configuration check for " + interfaceName.toUpperCase() + " in config.txt";
+            if (!foundAny) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                        command, expectedOutput, result.toString());
+            }
+
+            return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                    command, expectedOutput, result.toString());
+        }
+
+        private static List<BootConfig.Entry> findConfigEntries(BootConfig config, String setting) {
+            if (setting.startsWith("dtparam=")) {
+                return config.params(setting.substring(8));
+            } else if (setting.startsWith("dtoverlay=")) {
+                var family = setting.substring(10);
+                return config.overlayNames().stream()
+                        .filter(name -> name.equals(family) || name.startsWith(family + "-"))
+                        .sorted()
+                        .flatMap(name -> config.overlays(name).stream())
+                        .toList();
+            }
+            return config.settings(setting);
+        }
+
+        private static Optional<BootConfig.Entry> findEffectiveConfigEntry(BootConfig config, String setting) {
+            return setting.startsWith("dtparam=") ? config.param(setting.substring(8)) : config.setting(setting);
+        }
+
+        protected static CheckerResult.Check detectInterfaceFromDeviceTree(String interfaceType, String description) {
+            var result = new StringBuilder();
+            List<String> foundDevices = new ArrayList<>();
+
+            var index = DeviceTreeIndex.shared();
+            var soc = index.socNode();
+            if (soc.isPresent()) {
+                var socPath = soc.get().path();
+
+                // Nodes named after the interface, and nodes with an alias for the interface, e.g. uart0 for serial@7e201000
+                var aliasesByPath = new HashMap<String, String>();
+                index.aliases().forEach((alias, path) -> {
+                    if (alias.startsWith(interfaceType)) {
+                        aliasesByPath.merge(path, alias, (a, b) -> a + ", " + b);
+                    }
+                });
+                var interfaceNodes = new TreeMap<String, DeviceTreeIndex.Node>();
+                index.byNamePrefix(interfaceType).forEach(n -> interfaceNodes.put(n.path(), n));
+                aliasesByPath.keySet().forEach(path -> index.node(path).ifPresent(n -> interfaceNodes.put(path, n)));
+
+                for (DeviceTreeIndex.Node node : interfaceNodes.values()) {
+                    // Same as before the index, only nodes on the SoC bus and their children
+                    if (!node.path().startsWith(socPath + "/") || node.path().substring(socPath.length() + 1).split("/").length > 2) {
+                        continue;
+                    }
+
+                    String status = node.status();
+                    var alias = aliasesByPath.containsKey(node.path()) ? ", alias: " + aliasesByPath.get(node.path()) : "";
+
+                    // Only include devices with okay status
+                    if ("okay".equals(status)) {
+                        foundDevices.add(node.name());
+                        result.append("✓ ").append(node.name()).append(" (status: ").append(status).append(alias).append(")\n");
+                    } else {
+                        result.append("✗ ").append(node.name()).append(" (status: ").append(status).append(alias).append(")\n");
+                    }
+                }
+            } else {
+                result.append("Device-tree path ").append(index.source()).append("/soc not available\n");
+            }
+
+            var command = "Search for " + interfaceType.toUpperCase() + " in " + index.source();
+            var expectedOutput = interfaceType + " device-tree entries with status=okay";
+
+            if (foundDevices.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                        command, expectedOutput, result.toString());
+            }
+
+            return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                    command, expectedOutput, result.toString());
+        }
+    }
+
+    public static class GPIOChecker extends BaseChecker implements Checker {
+        /**
+         * The GPIO chips detected by this check.
+         */
+        static final Fact<List<GpioChipInventory.Chip>> CHIPS = new Fact<>("gpio.chips");
+
+        @Override
+        public String name() {
+            return "gpio";
+        }
+
+        @Override
+        public boolean isAffectedBy(Path changed) {
+            return isDevice(changed, "gpiochip");
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            if (!LibC.isAvailable()) {
+                return detect();
+            }
+
+            var chips = GpioChipInventory.read();
+            context.publish(CHIPS, chips);
+            return detect(chips);
+        }
+
+        public static CheckerResult detect() {
+            if (LibC.isAvailable()) {
+                return detect(GpioChipInventory.read());
+            }
+
+            return new CheckerResult("GPIO Detection", List.of(
+                    detectGpioDevicesWithTools()
+            ));
+        }
+
+        private static CheckerResult detect(List<GpioChipInventory.Chip> chips) {
+            return new CheckerResult("GPIO Detection", List.of(
+                    detectGpioChips(chips),
+                    detectUsedLines(chips)
+            ));
+        }
+
+        private static CheckerResult.Check detectGpioChips(List<GpioChipInventory.Chip> chips) {
+            var command = "GPIO_GET_CHIPINFO_IOCTL on /dev/gpiochip*";
+            var expectedOutput = "gpiochip0 [pinctrl-bcm2835] (54 lines) or similar";
+
+            if (chips.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                        command, expectedOutput, "No /dev/gpiochip* devices found");
+            }
+
+            return new CheckerResult.Check(chips.stream().allMatch(c -> c.error() != null)
+                    ? CheckerResult.ResultStatus.FAIL : CheckerResult.ResultStatus.PASS,
+                    command, expectedOutput,
+                    chips.stream()
+                            .map(GpioChipInventory.Chip::output)
+                            .collect(Collectors.joining("\n")));
+        }
+
+        private static CheckerResult.Check detectUsedLines(List<GpioChipInventory.Chip> chips) {
+            var command = "GPIO_V2_GET_LINEINFO_IOCTL on /dev/gpiochip*";
+            var expectedOutput = "Lines in use by the kernel or other applications";
+
+            var used = chips.stream()
+                    .flatMap(c -> c.lines().stream()
+                            .filter(GpioChipInventory.Line::isUsed)
+                            .map(l -> c.name() + " " + l.output()))
+                    .collect(Collectors.joining("\n"));
+
+            return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                    command, expectedOutput, used.isEmpty() ? "No lines in use" : used);
+        }
+
+        /**
+         * Fallback for systems where the native inventory is not available, using the gpiodetect tool.
+         */
+        private static CheckerResult.Check detectGpioDevicesWithTools() {
+            var found = new ArrayList<String>();
+
+            try {
+                Path[] commonPaths = {
+                        Path.of("/usr/bin/gpiodetect"),
+                        Path.of("/usr/local/bin/gpiodetect"),
+                        Path.of("/bin/gpiodetect")
+                };
+
+                for (Path path : commonPaths) {
+                    if (Files.exists(path) && Files.isExecutable(path)) {
+                        var output = CommandExecutor.execute(path.toString());
+                        if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
+                            found.add(output.getOutputMessage());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                System.err.printf("Error detecting GPIO devices with gpiodetect: %s%n", e.getMessage());
+            }
+
+            var command = "gpiodetect";
+            var expectedOutput = "gpiochip0 [pinctrl-bcm2835] (54 lines) or similar";
+
+            if (found.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                        command, expectedOutput, "");
+            } else {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                        command, expectedOutput,
+                        found.stream()
+                                .map(String::trim)
+                                .distinct()
+                                .sorted()
+                                .collect(Collectors.joining("\n"))
+                );
+            }
+        }
+    }
+
+    /**
+     * Reads the GPIO chips and their lines through the GPIO character device ABI (linux/gpio.h, v2), which gives
+     * the same information as {@code gpiodetect} and {@code gpioinfo}, without starting a process.
+     *
+     * <p>To try this without hardware, create a simulated chip with the gpio-sim kernel module, see the README.</p>
+     */
+    static class GpioChipInventory {
+        static final long GPIO_GET_CHIPINFO_IOCTL = 0x8044B401L;
+        static final long GPIO_V2_GET_LINEINFO_IOCTL = 0xC100B405L;
+
+        static final long GPIO_V2_LINE_FLAG_USED = 1L;
+        static final long GPIO_V2_LINE_FLAG_ACTIVE_LOW = 1L << 1;
+        static final long GPIO_V2_LINE_FLAG_INPUT = 1L << 2;
+        static final long GPIO_V2_LINE_FLAG_OUTPUT = 1L << 3;
+        static final long GPIO_V2_LINE_FLAG_EDGE_RISING = 1L << 4;
+        static final long GPIO_V2_LINE_FLAG_EDGE_FALLING = 1L << 5;
+        static final long GPIO_V2_LINE_FLAG_OPEN_DRAIN = 1L << 6;
+        static final long GPIO_V2_LINE_FLAG_OPEN_SOURCE = 1L << 7;
+        static final long GPIO_V2_LINE_FLAG_BIAS_PULL_UP = 1L << 8;
+        static final long GPIO_V2_LINE_FLAG_BIAS_PULL_DOWN = 1L << 9;
+        static final long GPIO_V2_LINE_FLAG_BIAS_DISABLED = 1L << 10;
+
+        /**
+         * Size of struct gpiochip_info: name[32], label[32], lines.
+         */
+        static final long CHIP_INFO_SIZE = 68;
+
+        /**
+         * Size of struct gpio_v2_line_info: name[32], consumer[32], offset, num_attrs, flags, attrs[10], padding[4].
+         */
+        static final long LINE_INFO_SIZE = 256;
+
+        /**
+         * @param device    path of the character device, e.g. /dev/gpiochip0
+         * @param name      name of the chip, e.g. gpiochip0
+         * @param label     label of the chip, e.g. pinctrl-bcm2711
+         * @param lineCount number of lines of the chip
+         * @param lines     info of each line
+         * @param error     the reason the chip could not be read, or {@code null}
+         */
+        record Chip(String device, String name, String label, int lineCount, List<Line> lines, String error) {
+            /**
+             * Same format as gpiodetect, e.g. "gpiochip0 [pinctrl-bcm2711] (58 lines)"
+             */
+            public String output() {
+                if (error != null) {
+                    return device + ": " + error;
+                }
+                return name + " [" + label + "] (" + lineCount + " lines)";
+            }
+        }
+
+        /**
+         * @param offset   offset of the line on the chip
+         * @param name     name of the line, e.g. GPIO17, can be empty
+         * @param consumer the consumer of the line if it is used, e.g. "spi0 CS0", can be empty
+         * @param flags    the GPIO_V2_LINE_FLAG_* flags
+         */
+        record Line(int offset, String name, String consumer, long flags) {
+            public boolean isUsed() {
+                return (flags & GPIO_V2_LINE_FLAG_USED) != 0;
+            }
+
+            public String direction() {
+                return (flags & GPIO_V2_LINE_FLAG_OUTPUT) != 0 ? "output" : "input";
+            }
+
+            /**
+             * Similar format as gpioinfo, e.g. "line 17 "GPIO17" used by "spi0 CS0" [output, active-low]"
+             */
+            public String output() {
+                var output = new StringBuilder("line ").append(offset);
+                output.append(" \"").append(name.isEmpty() ? "unnamed" : name).append("\"");
+                if (isUsed()) {
+                    output.append(" used by \"").append(consumer.isEmpty() ? "kernel" : consumer).append("\"");
+                }
+                output.append(" [").append(direction());
+                appendFlag(output, GPIO_V2_LINE_FLAG_ACTIVE_LOW, "active-low");
+                appendFlag(output, GPIO_V2_LINE_FLAG_EDGE_RISING, "rising-edge");
+                appendFlag(output, GPIO_V2_LINE_FLAG_EDGE_FALLING, "falling-edge");
+                appendFlag(output, GPIO_V2_LINE_FLAG_OPEN_DRAIN, "open-drain");
+                appendFlag(output, GPIO_V2_LINE_FLAG_OPEN_SOURCE, "open-source");
+                appendFlag(output, GPIO_V2_LINE_FLAG_BIAS_PULL_UP, "pull-up");
+                appendFlag(output, GPIO_V2_LINE_FLAG_BIAS_PULL_DOWN, "pull-down");
+                appendFlag(output, GPIO_V2_LINE_FLAG_BIAS_DISABLED, "bias-disabled");
+                return output.append("]").toString();
+            }
+
+            private void appendFlag(StringBuilder output, long flag, String description) {
+                if ((flags & flag) != 0) {
+                    output.append(", ").append(description);
+                }
+            }
+        }
+
+        /**
+         * Reads all chips in /dev.
+         *
+         * @return the chips, sorted by number
+         */
+        static List<Chip> read() {
+            return read(Paths.get("/dev"));
+        }
+
+        /**
+         * Reads all gpiochip devices in the given directory.
+         *
+         * @param devPath the directory with the gpiochip devices
+         * @return the chips, sorted by number
+         */
+        static List<Chip> read(Path devPath) {
+            try (var stream = Files.list(devPath)) {
+                return stream
+                        .filter(path -> path.getFileName().toString().matches("gpiochip\\d+"))
+                        .sorted(Comparator.comparingInt(path -> Integer.parseInt(path.getFileName().toString().substring(8))))
+                        .map(GpioChipInventory::readChip)
+                        .toList();
+            } catch (IOException e) {
+                System.err.printf("Error listing GPIO chips in %s: %s%n", devPath, e.getMessage());
+                return List.of();
+            }
+        }
+
+        static Chip readChip(Path device) {
+            try (var arena = Arena.ofConfined()) {
+                int fd = LibC.open(device.toString(), LibC.O_RDONLY | LibC.O_CLOEXEC);
+                try {
+                    var chipInfo = arena.allocate(CHIP_INFO_SIZE);
+                    LibC.ioctl(fd, GPIO_GET_CHIPINFO_IOCTL, chipInfo);
+                    var name = LibC.string(chipInfo, 0, 32);
+                    var label = LibC.string(chipInfo, 32, 32);
+                    int lineCount = chipInfo.get(JAVA_INT, 64);
+
+                    var lines = new ArrayList<Line>(lineCount);
+                    var lineInfo = arena.allocate(LINE_INFO_SIZE);
+                    for (int offset = 0; offset < lineCount; offset++) {
+                        lineInfo.fill((byte) 0);
+                        lineInfo.set(JAVA_INT, 64, offset);
+                        LibC.ioctl(fd, GPIO_V2_GET_LINEINFO_IOCTL, lineInfo);
+                        lines.add(new Line(offset, LibC.string(lineInfo, 0, 32), LibC.string(lineInfo, 32, 32),
+                                lineInfo.get(JAVA_LONG, 72)));
+                    }
+
+                    return new Chip(device.toString(), name, label, lineCount, List.copyOf(lines), null);
+                } finally {
+                    LibC.close(fd);
+                }
+            } catch (IOException e) {
+                return new Chip(device.toString(), device.getFileName().toString(), "", 0, List.of(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One line requested through the GPIO character device ABI v2, see linux/gpio.h, as used by the GPIO
+     * benchmarks. Setting and reading the value don't allocate.
+     */
+    static class GpioLine implements AutoCloseable {
+        static final long GPIO_V2_GET_LINE_IOCTL = 0xC250B407L;
+        static final long GPIO_V2_LINE_GET_VALUES_IOCTL = 0xC010B40EL;
+        static final long GPIO_V2_LINE_SET_VALUES_IOCTL = 0xC010B40FL;
+
+        /**
+         * Size of struct gpio_v2_line_request: offsets[64], consumer[32], config, num_lines, event_buffer_size,
+         * padding[5], fd.
+         */
+        static final long LINE_REQUEST_SIZE = 592;
+
+        private static final byte[] CONSUMER = "iochecker".getBytes(StandardCharsets.US_ASCII);
+
+        private final Arena arena = Arena.ofShared();
+        private final MemorySegment values = arena.allocate(16);
+        private final int fd;
+
+        private GpioLine(int fd) {
+            this.fd = fd;
+            values.set(JAVA_LONG, 8, 1); // mask, only the first and only line of the request
+        }
+
+        /**
+         * Requests a line, which fails with EBUSY if it is already in use.
+         *
+         * @param device          the chip, e.g. /dev/gpiochip0
+         * @param offset          the line on the chip
+         * @param flags           the GPIO_V2_LINE_FLAG_* flags, e.g. {@link GpioChipInventory#GPIO_V2_LINE_FLAG_OUTPUT}
+         * @param eventBufferSize number of edge events the kernel buffers, 0 for the default
+         * @return the requested line, which must be closed to release it
+         */
+        static GpioLine request(String device, int offset, long flags, int eventBufferSize) throws IOException {
+            try (var arena = Arena.ofConfined()) {
+                var request = arena.allocate(LINE_REQUEST_SIZE);
+                request.set(JAVA_INT, 0, offset);
+                MemorySegment.copy(CONSUMER, 0, request, JAVA_BYTE, 256, CONSUMER.length);
+                request.set(JAVA_LONG, 288, flags);
+                request.set(JAVA_INT, 560, 1);
+                request.set(JAVA_INT, 564, eventBufferSize);
+
+                int chipFd = LibC.open(device, LibC.O_RDWR | LibC.O_CLOEXEC);
+                try {
+                    LibC.ioctl(chipFd, GPIO_V2_GET_LINE_IOCTL, request);
+                    return new GpioLine(request.get(JAVA_INT, 588));
+                } finally {
+                    LibC.close(chipFd);
+                }
+            }
+        }
+
+        public int fd() {
+            return fd;
+        }
+
+        public void set(boolean high) throws IOException {
+            values.set(JAVA_LONG, 0, high ? 1 : 0);
+            LibC.ioctl(fd, GPIO_V2_LINE_SET_VALUES_IOCTL, values);
+        }
+
+        public boolean get() throws IOException {
+            LibC.ioctl(fd, GPIO_V2_LINE_GET_VALUES_IOCTL, values);
+            return (values.get(JAVA_LONG, 0) & 1) != 0;
+        }
+
+        @Override
+        public void close() {
+            LibC.close(fd);
+            arena.close();
+        }
+
+        /**
+         * Finds the line to use for a GPIO benchmark, which drives the line, so by default only a line of a
+         * simulated chip of the gpio-sim module is used. On real hardware, the chip and line must be given with
+         * the system properties {@code iochecker.gpio.chip}, e.g. gpiochip0, and {@code iochecker.gpio.line}.
+         *
+         * @return the chip device and line offset, or empty if there is no simulated chip and none is configured
+         */
+        static Optional<Map.Entry<String, Integer>> benchmarkLine() {
+            var chip = System.getProperty("iochecker.gpio.chip");
+            var line = System.getProperty("iochecker.gpio.line");
+            if (chip != null && line != null) {
+                return Optional.of(Map.entry(chip.startsWith("/") ? chip : "/dev/" + chip, Integer.parseInt(line)));
+            }
+            return GpioChipInventory.read().stream()
+                    .filter(c -> c.error() == null && c.label().startsWith("gpio-sim"))
+                    .findFirst()
+                    .map(c -> Map.entry(c.device(), line == null ? 0 : Integer.parseInt(line)));
+        }
+    }
+
+    /**
+     * Records the allocations of one thread with Java Flight Recorder, to verify that a benchmark loop doesn't
+     * allocate. A new TLAB or an allocation outside a TLAB is recorded, so a loop that allocates a few bytes per
+     * iteration shows up after a few thousand iterations.
+     */
+    static class AllocationRecorder implements AutoCloseable {
+        private final Recording recording = new Recording();
+        private final long threadId = Thread.currentThread().threadId();
+
+        AllocationRecorder() {
+            recording.enable("jdk.ObjectAllocationInNewTLAB").withStackTrace();
+            recording.enable("jdk.ObjectAllocationOutsideTLAB").withStackTrace();
+            recording.start();
+        }
+
+        /**
+         * Stops the recording.
+         *
+         * @return the allocations of the thread that created this recorder, e.g.
+         *         "3 allocations, e.g. java.lang.Long in Example.loop", or empty if there were none
+         */
+        public Optional<String> stop() throws IOException {
+            recording.stop();
+            var file = Files.createTempFile("iochecker", ".jfr");
+            try {
+                recording.dump(file);
+                var events = RecordingFile.readAllEvents(file).stream()
+                        .filter(e -> e.getThread() != null && e.getThread().getJavaThreadId() == threadId)
+                        .toList();
+                if (events.isEmpty()) {
+                    return Optional.empty();
+                }
+                var first = events.get(0);
+                var frame = first.getStackTrace() == null || first.getStackTrace().getFrames().isEmpty() ? "unknown"
+                        : first.getStackTrace().getFrames().get(0).getMethod().getType().getName() + "."
+                        + first.getStackTrace().getFrames().get(0).getMethod().getName();
+                return Optional.of(events.size() + " allocations, e.g. " + first.getClass("objectClass").getName()
+                        + " in " + frame);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        @Override
+        public void close() {
+            recording.close();
+        }
+    }
+
+    /**
+     * Measures how fast one output line can be toggled, directly through the GPIO character device and through
+     * each Pi4J provider, and verifies with Java Flight Recorder that the loop doesn't allocate. Runs on a
+     * simulated chip of the gpio-sim module, see {@link GpioLine#benchmarkLine()}. Only runs when selected with
+     * {@code gpio-bench}.
+     */
+    public static class GPIOBenchmarkChecker extends BaseChecker implements Checker {
+        static final List<String> DEFAULT_PROVIDERS = List.of("ffm-digital-output", "gpiod-digital-output",
+                "linuxfs-digital-output");
+
+        /**
+         * An output line driven in the benchmark loop.
+         */
+        interface Output extends AutoCloseable {
+            void set(boolean high) throws IOException;
+
+            @Override
+            void close() throws IOException;
+        }
+
+        @Override
+        public String name() {
+            return "gpio-bench";
+        }
+
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("GPIO Benchmark", new ArrayList<>());
+            var line = LibC.isAvailable() ? GpioLine.benchmarkLine() : Optional.<Map.Entry<String, Integer>>empty();
+            if (line.isEmpty()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "GPIO toggle rate", "A gpio-sim chip, or -Diochecker.gpio.chip and -Diochecker.gpio.line",
+                        "No line to benchmark, load the gpio-sim module or configure a line that can be driven"));
+                return result;
+            }
+
+            var device = line.get().getKey();
+            int offset = line.get().getValue();
+            var options = BenchmarkOptions.fromSystemProperties();
+
+            result.addResult(benchmark("GPIO character device", device, offset, options,
+                    () -> {
+                        var gpioLine = GpioLine.request(device, offset, GpioChipInventory.GPIO_V2_LINE_FLAG_OUTPUT, 0);
+                        return new Output() {
+                            @Override
+                            public void set(boolean high) throws IOException {
+                                gpioLine.set(high);
+                            }
+
+                            @Override
+                            public void close() {
+                                gpioLine.close();
+                            }
+                        };
+                    }));
+
+            // Pi4J uses the first chip, so the providers are only compared if the line is on that chip
+            if (!device.equals("/dev/gpiochip0")) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "GPIO toggle rate with Pi4J providers", "The line on gpiochip0, which Pi4J uses",
+                        "Skipped, the line is on " + device));
+                return result;
+            }
+            var providers = System.getProperty("iochecker.gpio.providers", String.join(",", DEFAULT_PROVIDERS));
+            for (String provider : providers.split("\\s*,\\s*")) {
+                result.addResult(benchmark("Pi4J provider " + provider, device, offset, options, () -> {
+                    var pi4j = Pi4JContexts.shared();
+                    DigitalOutput output = pi4j.create(DigitalOutput.newConfigBuilder(pi4j)
+                            .id("iochecker-bench-" + provider)
+                            .address(offset)
+                            .provider(provider)
+                            .build());
+                    return new Output() {
+                        @Override
+                        public void set(boolean high) {
+                            if (high) {
+                                output.high();
+                            } else {
+                                output.low();
+                            }
+                        }
+
+                        @Override
+                        public void close() {
+                            pi4j.shutdown(output.id());
+                        }
+                    };
+                }));
+            }
+
+            return result;
+        }
+
+        @FunctionalInterface
+        interface OutputFactory {
+            Output open() throws Exception;
+        }
+
+        private static CheckerResult.Check benchmark(String name, String device, int offset, BenchmarkOptions options,
+                                                     OutputFactory factory) {
+            var command = "GPIO toggle rate with " + name + " on " + device + " line " + offset;
+            var expected = "Toggles per second and latency per call, without allocations";
+
+            try (var output = factory.open()) {
+                boolean high = false;
+                long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+                while (System.nanoTime() < warmupEnd) {
+                    high = !high;
+                    output.set(high);
+                }
+
+                var recorder = new LatencyRecorder();
+                long nanos;
+                Optional<String> allocations;
+                try (var allocationRecorder = new AllocationRecorder()) {
+                    long start = System.nanoTime();
+                    long end = start + options.duration().toNanos();
+                    long now = start;
+                    while (now < end) {
+                        high = !high;
+                        output.set(high);
+                        long done = System.nanoTime();
+                        recorder.record(done - now);
+                        now = done;
+                    }
+                    nanos = now - start;
+                    allocations = allocationRecorder.stop();
+                }
+
+                var result = BenchmarkOptions.formatRate(recorder.count(), nanos) + " toggles\n" + recorder.format() + "\n"
+                        + allocations.map(a -> "Allocates in the loop: " + a).orElse("No allocations in the loop");
+                return new CheckerResult.Check(allocations.isEmpty() ? CheckerResult.ResultStatus.PASS
+                        : CheckerResult.ResultStatus.TO_EVALUATE, command, expected, result);
+            } catch (Exception e) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Measures how quickly edge events of an input line are delivered, and how many get lost, at increasing edge
+     * rates. The edges are generated on a simulated chip of the gpio-sim module by changing the pull of the line,
+     * or on real hardware with an output line wired to the input line, set with {@code iochecker.gpio.output-line}.
+     * Only runs when selected with {@code gpio-edge-bench}.
+     *
+     * <p>Through the GPIO character device, each event has a kernel timestamp, so the latency is measured from the
+     * moment the kernel saw the edge until the listener is called. Events are read by a platform thread, and
+     * dispatched to the listener either by one platform thread, in order, or by a virtual thread per event. Gaps
+     * in the sequence numbers of the kernel are events lost because the kernel buffer was full, other missing
+     * events were coalesced because the edges came too fast. Pi4J events have no kernel timestamp, so for the
+     * Pi4J providers the latency is measured from the moment the edge was generated.</p>
+     */
+    public static class GPIOEdgeBenchmarkChecker extends BaseChecker implements Checker {
+        static final List<Integer> RATES = List.of(100, 1_000, 5_000, 10_000, 50_000, 100_000);
+        static final List<String> DEFAULT_PROVIDERS = List.of("ffm-digital-input", "gpiod-digital-input",
+                "linuxfs-digital-input");
+
+        /**
+         * Size of struct gpio_v2_line_event: timestamp_ns, id, offset, seqno, line_seqno, padding[6].
+         */
+        static final int LINE_EVENT_SIZE = 48;
+
+        private static final int MAX_EDGES_PER_RATE = 50_000;
+        private static final Duration SETTLE_TIMEOUT = Duration.ofMillis(200);
+
+        /**
+         * Generates edges on the input line.
+         */
+        interface EdgeSource extends AutoCloseable {
+            void set(boolean high) throws IOException;
+
+            @Override
+            void close() throws IOException;
+        }
+
+        /**
+         * @param generated edges generated
+         * @param received  events delivered to the listener
+         * @param lost      events lost in the kernel, from the gaps in the sequence numbers
+         * @param latency   delivery latencies
+         */
+        record RateResult(int rate, int generated, long received, long lost, LatencyRecorder latency) {
+            public boolean isLossless() {
+                return received == generated && lost == 0;
+            }
+
+            public String output() {
+                return String.format("%6d/s: %d edges, %d received, %d lost in the kernel, %d coalesced, %s", rate,
+                        generated, received, lost, Math.max(0, generated - received - lost), latency.format());
+            }
+        }
+
+        @Override
+        public String name() {
+            return "gpio-edge-bench";
+        }
+
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("GPIO Edge Event Benchmark", new ArrayList<>());
+            var line = LibC.isAvailable() ? GpioLine.benchmarkLine() : Optional.<Map.Entry<String, Integer>>empty();
+            if (line.isEmpty()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "GPIO edge events", "A gpio-sim chip, or -Diochecker.gpio.chip, -Diochecker.gpio.line and -Diochecker.gpio.output-line",
+                        "No line to benchmark, load the gpio-sim module or configure a wired output and input line"));
+                return result;
+            }
+
+            var device = line.get().getKey();
+            int offset = line.get().getValue();
+            var options = BenchmarkOptions.fromSystemProperties();
+
+            result.addResult(benchmark("GPIO character device, platform thread dispatch", device, offset, options,
+                    (source, rate, edges) -> measureCdev(device, offset, source, rate, edges, Executors::newSingleThreadExecutor)));
+            result.addResult(benchmark("GPIO character device, virtual thread dispatch", device, offset, options,
+                    (source, rate, edges) -> measureCdev(device, offset, source, rate, edges, Executors::newVirtualThreadPerTaskExecutor)));
+
+            // Pi4J uses the first chip, so the providers are only compared if the line is on that chip
+            if (!device.equals("/dev/gpiochip0")) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "GPIO edge events with Pi4J providers", "The line on gpiochip0, which Pi4J uses",
+                        "Skipped, the line is on " + device));
+                return result;
+            }
+            var providers = System.getProperty("iochecker.gpio.input-providers", String.join(",", DEFAULT_PROVIDERS));
+            for (String provider : providers.split("\\s*,\\s*")) {
+                result.addResult(benchmark("Pi4J provider " + provider, device, offset, options,
+                        (source, rate, edges) -> measurePi4J(provider, offset, source, rate, edges)));
+            }
+
+            return result;
+        }
+
+        @FunctionalInterface
+        interface Measurement {
+            RateResult measure(EdgeSource source, int rate, int edges) throws Exception;
+        }
+
+        private static CheckerResult.Check benchmark(String name, String device, int offset, BenchmarkOptions options,
+                                                     Measurement measurement) {
+            var command = "GPIO edge events with " + name + " on " + device + " line " + offset;
+            var expected = "All edges delivered, the highest rate without loss";
+            var output = new StringBuilder();
+            int maxLossless = 0;
+
+            try (var source = openSource(device, offset)) {
+                long durationPerRate = options.duration().toNanos() / RATES.size();
+                for (int rate : RATES) {
+                    // An even number of edges leaves the line high again for the next rate
+                    int edges = (int) Math.clamp(rate * durationPerRate / 1_000_000_000L, 10, MAX_EDGES_PER_RATE)
+                            & ~1;
+                    var rateResult = measurement.measure(source, rate, edges);
+                    output.append(rateResult.output()).append("\n");
+                    if (rateResult.isLossless()) {
+                        maxLossless = rate;
+                    } else {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                output.append("Failed: ").append(e.getMessage());
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, output.toString());
+            }
+
+            output.append(maxLossless == 0 ? "Events are lost at every rate"
+                    : "Highest rate without loss: " + maxLossless + " edges/s");
+            return new CheckerResult.Check(maxLossless > 0 ? CheckerResult.ResultStatus.PASS
+                    : CheckerResult.ResultStatus.FAIL, command, expected, output.toString());
+        }
+
+        private static RateResult measureCdev(String device, int offset, EdgeSource source, int rate, int edges,
+                                              Supplier<ExecutorService> dispatcher) throws Exception {
+            var latency = new LatencyRecorder();
+            var lock = new ReentrantLock();
+            var received = new AtomicLong();
+            var lost = new AtomicLong();
+            var stopped = new AtomicBoolean();
+
+            try (var input = GpioLine.request(device, offset, GpioChipInventory.GPIO_V2_LINE_FLAG_INPUT
+                    | GpioChipInventory.GPIO_V2_LINE_FLAG_EDGE_RISING | GpioChipInventory.GPIO_V2_LINE_FLAG_EDGE_FALLING, 0);
+                 var executor = dispatcher.get()) {
+                var reader = Thread.ofPlatform().name("iochecker-edge-reader").start(() -> {
+                    try (var arena = Arena.ofConfined()) {
+                        var events = arena.allocate(64L * LINE_EVENT_SIZE);
+                        int lastSeqno = 0;
+                        while (!stopped.get()) {
+                            if (!LibC.pollIn(input.fd(), 20)) {
+                                continue;
+                            }
+                            long count = LibC.read(input.fd(), events) / LINE_EVENT_SIZE;
+                            for (int i = 0; i < count; i++) {
+                                long timestamp = events.get(JAVA_LONG, (long) i * LINE_EVENT_SIZE);
+                                int seqno = events.get(JAVA_INT, (long) i * LINE_EVENT_SIZE + 20);
+                                if (lastSeqno != 0 && seqno > lastSeqno + 1) {
+                                    lost.addAndGet(seqno - lastSeqno - 1);
+                                }
+                                lastSeqno = seqno;
+                                executor.execute(() -> {
+                                    // The kernel timestamps use CLOCK_MONOTONIC, the same clock as System.nanoTime on Linux
+                                    long delay = System.nanoTime() - timestamp;
+                                    lock.lock();
+                                    try {
+                                        latency.record(delay);
+                                    } finally {
+                                        lock.unlock();
+                                    }
+                                    received.incrementAndGet();
+                                });
+                            }
+                        }
+                    } catch (IOException e) {
+                        System.err.printf("Error reading edge events: %s%n", e.getMessage());
+                    }
+                });
+
+                generate(source, rate, edges, null);
+                awaitSettled(() -> received.get() + lost.get(), edges);
+                stopped.set(true);
+                reader.join();
+            }
+
+            return new RateResult(rate, edges, received.get(), lost.get(), latency);
+        }
+
+        private static RateResult measurePi4J(String provider, int offset, EdgeSource source, int rate, int edges)
+                throws Exception {
+            var latency = new LatencyRecorder();
+            var lock = new ReentrantLock();
+            var received = new AtomicLong();
+            var generatedAt = new long[edges];
+
+            var pi4j = Pi4JContexts.shared();
+            DigitalInput input = pi4j.create(DigitalInput.newConfigBuilder(pi4j)
+                    .id("iochecker-edge-" + provider + "-" + rate)
+                    .address(offset)
+                    .provider(provider)
+                    .build());
+            try {
+                input.addListener(event -> {
+                    long now = System.nanoTime();
+                    int index = (int) received.getAndIncrement();
+                    if (index < edges) {
+                        lock.lock();
+                        try {
+                            latency.record(now - generatedAt[index]);
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                });
+                generate(source, rate, edges, generatedAt);
+                awaitSettled(received::get, edges);
+            } finally {
+                pi4j.shutdown(input.id());
+            }
+
+            return new RateResult(rate, edges, received.get(), 0, latency);
+        }
+
+        /**
+         * Toggles the line at the given rate, busy waiting between the edges, as sleeping isn't precise enough.
+         */
+        private static void generate(EdgeSource source, int rate, int edges, long[] generatedAt) throws IOException {
+            long period = 1_000_000_000L / rate;
+            long start = System.nanoTime();
+            for (int i = 0; i < edges; i++) {
+                long target = start + i * period;
+                while (System.nanoTime() < target) {
+                    Thread.onSpinWait();
+                }
+                if (generatedAt != null) {
+                    generatedAt[i] = System.nanoTime();
+                }
+                // The line starts high, so even edges are falling and odd edges rising
+                source.set(i % 2 != 0);
+            }
+        }
+
+        /**
+         * Waits until all events are accounted for, or no more events arrive.
+         */
+        private static void awaitSettled(LongSupplier accounted, int expected) throws InterruptedException {
+            long last = -1;
+            long lastChange = System.nanoTime();
+            while (accounted.getAsLong() < expected) {
+                long current = accounted.getAsLong();
+                if (current != last) {
+                    last = current;
+                    lastChange = System.nanoTime();
+                } else if (System.nanoTime() - lastChange > SETTLE_TIMEOUT.toNanos()) {
+                    return;
+                }
+                Thread.sleep(1);
+            }
+        }
+
+        /**
+         * Opens the source of the edges: the wired output line if configured, else the pull of the simulated line.
+         * The line starts high, so the first generated edge is a falling one, and each rate ends with the line high.
+         */
+        private static EdgeSource openSource(String device, int offset) throws IOException {
+            var outputLine = System.getProperty("iochecker.gpio.output-line");
+            if (outputLine != null) {
+                var output = GpioLine.request(device, Integer.parseInt(outputLine), GpioChipInventory.GPIO_V2_LINE_FLAG_OUTPUT, 0);
+                output.set(true);
+                return new EdgeSource() {
+                    @Override
+                    public void set(boolean high) throws IOException {
+                        output.set(high);
+                    }
+
+                    @Override
+                    public void close() {
+                        output.close();
+                    }
+                };
+            }
+
+            var chip = Paths.get(device).getFileName().toString();
+            var pull = Paths.get("/sys/bus/gpio/devices", chip, "sim_gpio" + offset, "pull");
+            if (!Files.exists(pull)) {
+                throw new IOException("No output line configured with -Diochecker.gpio.output-line, and "
+                        + device + " is not a gpio-sim chip");
+            }
+            var channel = FileChannel.open(pull, StandardOpenOption.WRITE);
+            var pullUp = ByteBuffer.wrap("pull-up".getBytes(StandardCharsets.US_ASCII));
+            var pullDown = ByteBuffer.wrap("pull-down".getBytes(StandardCharsets.US_ASCII));
+            channel.write(pullUp.rewind(), 0);
+            return new EdgeSource() {
+                @Override
+                public void set(boolean high) throws IOException {
+                    channel.write((high ? pullUp : pullDown).rewind(), 0);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+    }
+
+    public static class PWMChecker extends BaseChecker implements Checker {
+        @Override
+        public String name() {
+            return "pwm";
+        }
+
+        @Override
+        public boolean isAffectedBy(Path changed) {
+            return isConfigFile(changed) || changed.startsWith(WatchMode.SYSFS_PATHS.get(0));
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            return detect();
+        }
+
+        public static CheckerResult detect() {
+            return new CheckerResult("PWM Detection", List.of(
+                detectConfigSetting(List.of("dtoverlay=pwm"), "PWM", "dtoverlay=pwm (or dtoverlay=pwm-2chan for 2-channel PWM)"),
+                detectPwmChips(),
+                detectPwmFromPinctrl()
+            ));
+        }
+
+        private static CheckerResult.Check detectPwmFromPinctrl() {
+            var result = new StringBuilder();
+
+            CommandExecutor.stream("pinctrl", (source, line) -> {
+                if (isPwmFunction(line)) {
+                    result.append(line).append("\n");
+                }
+                return true;
+            });
+
+            var command = "pinctrl | grep PWM";
+            var expectedOutput = "GPIO line(s) with PWM function (e.g., GPIO18 = PWM0_CHAN2)";
+
+            if (result.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                    command, expectedOutput, "");
+            } else {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                    command, expectedOutput, result.toString());
+            }
+        }
+
+        /**
+         * Checks if the function after the "=" in a line of the pinctrl output is a PWM channel, e.g.
+         * "18: a3    pd | lo // GPIO18 = PWM0_CHAN2". Pins with only PWM in their name, like FAN_PWM when it is
+         * used as an input, are not counted.
+         *
+         * @param line line of the pinctrl output
+         * @return {@code true} if the pin is set to a PWM function
+         */
+        static boolean isPwmFunction(CharSequence line) {
+            int end = line.length();
+            int comment = 0;
+            do {
+                comment = TextScanner.indexOf(line, '/', comment, end) + 1;
+            } while (comment < end && line.charAt(comment) != '/');
+            int function = TextScanner.indexOf(line, '=', comment, end) + 1;
+            if (function >= end) {
+                return false;
+            }
+            function = TextScanner.skipWhitespace(line, function, end);
+            return TextScanner.startsWith(line, function, end, "PWM");
+        }
+
+        private static CheckerResult.Check detectPwmChips() {
+            var result = new StringBuilder();
+
+            try {
+                Path pwmPath = Paths.get("/sys/class/pwm");
+                if (Files.exists(pwmPath)) {
+                    try (var stream = Files.walk(pwmPath, 2)) {
+                        stream
+                            .map(f -> f.getFileName() + " ")
+                            .filter(f -> f.startsWith("pwmchip"))
+                            .sorted()
+                            .forEach(result::append);
+                    }
+                }
+            } catch (Exception e) {
+                System.err.printf("Error detecting PWM chips: %s", e.getMessage());
+            }
+
+            var command = "ls -l /sys/class/pwm/";
+            var expectedOutput = "One or more pwmchipX (X = number)";
+
+            if (result.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                    command, expectedOutput, "");
+            } else {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                    command, expectedOutput, result.toString());
+            }
+        }
+    }
+
+    /**
+     * Programs each PWM chip through sysfs: exports a channel, sets a sweep of periods and duty cycles, reads
+     * them back to see what the hardware accepted, and times each write. The output is not enabled, so no signal
+     * is generated. Only runs when selected with {@code pwm-sweep}.
+     *
+     * <p>The sysfs root can be changed with {@code -Diochecker.pwm.root}, to run against a fake tree: a directory
+     * with {@code pwmchip0/npwm}, {@code pwmchip0/export}, {@code pwmchip0/unexport} and a pre-created
+     * {@code pwmchip0/pwm0} directory with {@code period}, {@code duty_cycle} and {@code enable} files.
+     * A channel that already exists is used as is, and left exported, unless it is enabled, as it is then in use.</p>
+     */
+    public static class PWMSweepChecker extends BaseChecker implements Checker {
+        static final List<Long> PERIODS = List.of(1_000_000L, 100_000L, 50_000L, 10_000L, 1_000L);
+        static final int[] DUTY_PERCENTAGES = {0, 25, 50, 75, 100};
+
+        private static final int RESOLUTION_STEPS = 64;
+        private static final int UPDATES = 1_000;
+        private static final Duration EXPORT_TIMEOUT = Duration.ofSeconds(1);
+
+        @Override
+        public String name() {
+            return "pwm-sweep";
+        }
+
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("PWM Sweep", new ArrayList<>());
+            var root = Paths.get(System.getProperty("iochecker.pwm.root", WatchMode.SYSFS_PATHS.get(0).toString()));
+            int channel = Integer.getInteger("iochecker.pwm.channel", 0);
+
+            var chips = new ArrayList<Path>();
+            try (var stream = Files.list(root)) {
+                stream.filter(p -> p.getFileName().toString().startsWith("pwmchip"))
+                        .sorted()
+                        .forEach(chips::add);
+            } catch (IOException e) {
+                // Reported below as no chips
+            }
+
+            if (chips.isEmpty()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "PWM sweep in " + root, "One or more pwmchipX", "No PWM chips found"));
+            }
+            chips.forEach(chip -> result.addResult(sweep(chip, channel)));
+
+            return result;
+        }
+
+        private static CheckerResult.Check sweep(Path chip, int channel) {
+            var command = "PWM sweep of " + chip.getFileName() + " channel " + channel;
+            var expected = "Periods and duty cycles are accepted, with the time per update";
+            var output = new StringBuilder();
+            var pwm = chip.resolve("pwm" + channel);
+            boolean exported = false;
+
+            try {
+                int npwm = Integer.parseInt(Files.readString(chip.resolve("npwm")).trim());
+                output.append("npwm: ").append(npwm).append("\n");
+                if (channel >= npwm) {
+                    return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE, command, expected,
+                            output.append("The chip has no channel ").append(channel).toString());
+                }
+
+                if (Files.isDirectory(pwm)) {
+                    if (read(pwm.resolve("enable")) != 0) {
+                        return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE, command, expected,
+                                output.append("Skipped, the channel is enabled and in use").toString());
+                    }
+                    output.append("Channel was already exported\n");
+                } else {
+                    Files.writeString(chip.resolve("export"), Integer.toString(channel));
+                    exported = true;
+                    awaitExport(pwm);
+                }
+
+                boolean allAccepted = true;
+                var writes = new LatencyRecorder();
+                try (var period = FileChannel.open(pwm.resolve("period"), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     var duty = FileChannel.open(pwm.resolve("duty_cycle"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    var buffer = ByteBuffer.allocate(32);
+                    for (long requestedPeriod : PERIODS) {
+                        // The duty cycle can't be longer than the period, so it is reset first. A driver rejects
+                        // a period it can't produce, which is a result of the sweep and not a failure.
+                        try {
+                            write(duty, buffer, 0, writes);
+                            write(period, buffer, requestedPeriod, writes);
+                        } catch (IOException e) {
+                            output.append(String.format("Period %d ns: rejected (%s)%n", requestedPeriod,
+                                    rejection(e)));
+                            allAccepted = false;
+                            continue;
+                        }
+                        long actualPeriod = read(period, buffer);
+                        output.append(String.format("Period %d ns: %s", requestedPeriod,
+                                actualPeriod == requestedPeriod ? "accepted" : "got " + actualPeriod + " ns"));
+                        allAccepted &= actualPeriod == requestedPeriod;
+
+                        int accepted = 0;
+                        var rejected = new ArrayList<String>();
+                        for (int percentage : DUTY_PERCENTAGES) {
+                            long requestedDuty = actualPeriod * percentage / 100;
+                            try {
+                                write(duty, buffer, requestedDuty, writes);
+                            } catch (IOException e) {
+                                rejected.add(percentage + "% rejected (" + rejection(e) + ")");
+                                continue;
+                            }
+                            if (read(duty, buffer) == requestedDuty) {
+                                accepted++;
+                            }
+                        }
+                        allAccepted &= accepted == DUTY_PERCENTAGES.length;
+                        output.append(", ").append(accepted).append("/").append(DUTY_PERCENTAGES.length)
+                                .append(" duty cycles accepted");
+                        if (!rejected.isEmpty()) {
+                            output.append(" (").append(String.join(", ", rejected)).append(")");
+                        }
+                        output.append(", resolution ")
+                                .append(resolution(duty, buffer, actualPeriod, writes)).append(" ns\n");
+                    }
+
+                    long half = read(period, buffer) / 2;
+                    try {
+                        long start = System.nanoTime();
+                        for (int i = 0; i < UPDATES; i++) {
+                            write(duty, buffer, i % 2 == 0 ? half : half / 2, writes);
+                        }
+                        output.append(BenchmarkOptions.formatRate(UPDATES, System.nanoTime() - start))
+                                .append(" duty cycle updates\n");
+                        write(duty, buffer, 0, writes);
+                    } catch (IOException e) {
+                        output.append("Duty cycle updates: rejected (").append(rejection(e)).append(")\n");
+                        allAccepted = false;
+                    }
+                }
+                output.append("Time per write: ").append(writes.format());
+
+                return new CheckerResult.Check(allAccepted ? CheckerResult.ResultStatus.PASS
+                        : CheckerResult.ResultStatus.TO_EVALUATE, command, expected, output.toString());
+            } catch (IOException | NumberFormatException e) {
+                // Only the export, opening or reading of the channel, rejected values are reported above
+                output.append("Failed: ").append(e.getMessage());
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, output.toString());
+            } finally {
+                if (exported) {
+                    try {
+                        Files.writeString(chip.resolve("unexport"), Integer.toString(channel));
+                    } catch (IOException e) {
+                        System.err.printf("Could not unexport %s: %s%n", pwm, e.getMessage());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes duty cycles just above half the period, one nanosecond apart, and returns the smallest step
+         * between the values the hardware accepted, or 0 if none of the values was accepted. Rejected values
+         * are skipped.
+         */
+        private static long resolution(FileChannel duty, ByteBuffer buffer, long period, LatencyRecorder writes)
+                throws IOException {
+            long previous = -1;
+            long smallest = Long.MAX_VALUE;
+            for (int i = 0; i < RESOLUTION_STEPS; i++) {
+                try {
+                    write(duty, buffer, period / 2 + i, writes);
+                } catch (IOException e) {
+                    continue;
+                }
+                long actual = read(duty, buffer);
+                if (previous >= 0 && actual > previous) {
+                    smallest = Math.min(smallest, actual - previous);
+                }
+                previous = actual;
+            }
+            return smallest == Long.MAX_VALUE ? 0 : smallest;
+        }
+
+        /**
+         * @return the reason a driver rejected a written value, e.g. "EINVAL" for an unsupported period
+         */
+        private static String rejection(IOException e) {
+            return "Invalid argument".equals(e.getMessage()) ? "EINVAL" : e.getMessage();
+        }
+
+        /**
+         * The channel directory is created by the kernel, and its files are made accessible by udev,
+         * which can take a moment.
+         */
+        private static void awaitExport(Path pwm) throws IOException {
+            long end = System.nanoTime() + EXPORT_TIMEOUT.toNanos();
+            while (!Files.isWritable(pwm.resolve("period"))) {
+                if (System.nanoTime() > end) {
+                    throw new IOException(pwm + " was not created after the export");
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for " + pwm, e);
+                }
+            }
+        }
+
+        private static void write(FileChannel channel, ByteBuffer buffer, long value, LatencyRecorder writes)
+                throws IOException {
+            buffer.clear();
+            var digits = Long.toString(value);
+            for (int i = 0; i < digits.length(); i++) {
+                buffer.put((byte) digits.charAt(i));
+            }
+            buffer.put((byte) '\n').flip();
+            long start = System.nanoTime();
+            // sysfs attributes are written in one call at offset 0. In a fake tree, a shorter value leaves digits
+            // of the previous one after the newline, which are ignored when reading.
+            channel.write(buffer, 0);
+            writes.record(System.nanoTime() - start);
+        }
+
+        private static long read(FileChannel channel, ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            channel.read(buffer, 0);
+            long value = 0;
+            for (int i = 0; i < buffer.position(); i++) {
+                byte b = buffer.get(i);
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                value = value * 10 + (b - '0');
+            }
+            return value;
+        }
+
+        private static long read(Path path) throws IOException {
+            return Long.parseLong(Files.readString(path).trim());
+        }
+    }
+
+    public static class I2CChecker extends BaseChecker implements Checker {
+        /**
+         * The I2C buses detected by this check.
+         */
+        static final Fact<List<I2CDevice>> BUSES = new Fact<>("i2c.buses");
+
+        /**
+         * The in-process scan of each bus, by bus number, only published if native access is available.
+         */
+        static final Fact<Map<Integer, I2CBusScanner.Scan>> SCANS = new Fact<>("i2c.scans");
+
+        @Override
+        public String name() {
+            return "i2c";
+        }
+
+        @Override
+        public boolean isAffectedBy(Path changed) {
+            return isConfigFile(changed) || isDevice(changed, "i2c-");
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var devices = detectI2CDevices();
+            context.publish(BUSES, devices);
+            return detect(devices, context);
+        }
+
+        private static CheckerResult detect(List<I2CDevice> devices, CheckContext context) {
+            var result = new CheckerResult("I2C Detection", new ArrayList<>(List.of(
+                detectConfigSetting(List.of("dtparam=i2c_arm", "dtparam=i2c"), "I2C", "dtparam=i2c_arm=on"),
+                detectInterfaceFromDeviceTree("i2c", "I2C bus controller"),
+                detectI2CDevicesWithCommand(devices)
+            )));
+
+            if (LibC.isAvailable()) {
+                var options = I2CBusScanner.Options.fromSystemProperties();
+                var scans = I2CBusScanner.scanAll(devices.stream().map(I2CDevice::getBusNumber).toList(), options);
+                context.publish(SCANS, scans);
+                devices.forEach(d -> result.addResult(detectI2CUsedAddresses(scans.get(d.getBusNumber()), options)));
+            } else {
+                devices.forEach(d -> result.addResult(detectI2CUsedAddresses(d)));
+            }
+
+            return result;
+        }
+
+        private static CheckerResult.Check detectI2CDevicesWithCommand(List<I2CDevice> devices) {
+            String expectedOutput = "One or more devices, e.g. 'i2c-1' (I2C bus adapters detected by 'i2cdetect -l')";
+
+            if (devices.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                    "i2cdetect -l",
+                    expectedOutput, "");
+            } else {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                    "i2cdetect -l",
+                    expectedOutput,
+                    devices.stream()
+                        .map(I2CDevice::output)
+                        .collect(Collectors.joining("\n")));
+            }
+        }
+
+        private static CheckerResult.Check detectI2CUsedAddresses(I2CBusScanner.Scan scan, I2CBusScanner.Options options) {
+            var result = new StringBuilder();
+            String expectedOutput = "One or more I2C used addresses detected on bus " + scan.bus();
+            var command = "Scan of /dev/i2c-" + scan.bus() + " (probe: " + options.strategy().name().toLowerCase() + ")";
+
+            if (scan.error() != null) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                    "Error scanning I2C bus " + scan.bus(),
+                    expectedOutput, scan.error());
+            }
+
+            if (!scan.present().isEmpty()) {
+                result.append("Found ").append(scan.present().size())
+                    .append(" used addres(ses) on bus ").append(scan.bus())
+                    .append(": ").append(scan.present().format()).append("\n");
+            } else {
+                result.append("No used addresses found on bus ").append(scan.bus()).append("\n");
+            }
+            if (!scan.busy().isEmpty()) {
+                result.append("In use by a kernel driver: ").append(scan.busy().format()).append("\n");
+            }
+            result.append("Scanned in ").append(TimeUnit.NANOSECONDS.toMicros(scan.durationNanos())).append(" us");
+
+            return new CheckerResult.Check(scan.present().isEmpty() && scan.busy().isEmpty()
+                    ? CheckerResult.ResultStatus.FAIL : CheckerResult.ResultStatus.PASS,
+                command, expectedOutput, result.toString());
+        }
+
+        /**
+         * Fallback for systems where the native scan is not available, using the i2cdetect tool.
+         */
+        private static CheckerResult.Check detectI2CUsedAddresses(I2CDevice device) {
+            var result = new StringBuilder();
+            String expectedOutput = "One or more I2C used addresses detected on bus " + device.getBusNumber();
+            var addresses = I2CAddressMap.EMPTY;
+
+            try {
+                var output = CommandExecutor.execute("i2cdetect -y " + device.getBusNumber());
+                if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
+                    addresses = parseI2CDeviceAddresses(output.getOutputMessage());
+
+                    if (!addresses.isEmpty()) {
+                        result.append("Found ").append(addresses.size())
+                            .append(" used addres(ses) on bus ").append(device.getBusNumber())
+                            .append(": ").append(addresses.format());
+                    } else {
+                        result.append("No used addresses found on bus ").append(device.getBusNumber()).append("\n");
+                    }
+                }
+            } catch (Exception e) {
+                System.err.printf("Error detecting I2C addresses on bus %s: %s", device.getBusNumber(), e.getMessage());
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                    "Error scanning I2C bus " + device.getBusNumber(),
+                    expectedOutput, e.getMessage());
+            }
+
+            if (addresses.isEmpty()) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                    "i2cdetect -y " + device.getBusNumber(),
+                    expectedOutput, result.toString());
+            } else {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                    "i2cdetect -y " + device.getBusNumber(),
+                    expectedOutput, result.toString());
+            }
+        }
+
+        /**
+         * Parses the table of {@code i2cdetect -y}, e.g. the row "10: -- -- -- -- -- -- -- -- -- -- -- -- 1c -- -- --".
+         * Addresses in use by a kernel driver (UU) are not included.
+         *
+         * @param output output of i2cdetect
+         * @return the addresses that responded
+         */
+        static I2CAddressMap parseI2CDeviceAddresses(CharSequence output) {
+            long low = 0;
+            long high = 0;
+
+            int length = output.length();
+            for (int start = 0; start < length; ) {
+                int end = TextScanner.indexOf(output, '\n', start, length);
+                int pos = TextScanner.skipWhitespace(output, start, end);
+
+                // Rows start with their first address, "00:" to "70:", the header line with the columns is skipped
+                if (end - pos >= 3 && output.charAt(pos) >= '0' && output.charAt(pos) <= '7'
+                        && output.charAt(pos + 1) == '0' && output.charAt(pos + 2) == ':') {
+                    for (pos += 3; pos < end; ) {
+                        pos = TextScanner.skipWhitespace(output, pos, end);
+                        int tokenEnd = TextScanner.tokenEnd(output, pos, end);
+                        // Valid addresses are two hex digits (not -- or UU)
+                        if (tokenEnd - pos == 2) {
+                            int address = TextScanner.hexDigit(output.charAt(pos)) << 4
+                                    | TextScanner.hexDigit(output.charAt(pos + 1));
+                            if (address >= 0 && address < 64) {
+                                low |= 1L << address;
+                            } else if (address >= 64 && address < 128) {
+                                high |= 1L << (address - 64);
+                            }
+                        }
+                        pos = tokenEnd;
+                    }
+                }
+                start = end + 1;
+            }
+
+            return new I2CAddressMap(low, high);
+        }
+
+        private static List<I2CDevice> detectI2CDevices() {
+            // The same information as 'i2cdetect -l', without starting a process
+            Path i2cDevPath = Paths.get("/sys/class/i2c-dev");
+            if (Files.isDirectory(i2cDevPath)) {
+                try (var stream = Files.list(i2cDevPath)) {
+                    return stream
+                        .map(path -> new I2CDevice(path.getFileName().toString(), "i2c",
+                            readAdapterName(path), "I2C adapter"))
+                        .filter(d -> d.getBusNumber() >= 0)
+                        .sorted(Comparator.comparingInt(I2CDevice::getBusNumber))
+                        .toList();
                 } catch (Exception e) {
-                    System.out.printf("Could not read config file %s: %s", configPath, e.getMessage());
+                    System.err.printf("Error detecting I2C devices in %s: %s%n", i2cDevPath, e.getMessage());
+                }
+            }
+
+            try {
+                var output = CommandExecutor.execute("i2cdetect -l");
+                if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
+                    return parseI2CDetectOutput(output.getOutputMessage());
+                }
+            } catch (Exception e) {
+                System.err.printf("Error detecting I2C devices with i2cdetect command: %s", e.getMessage());
+            }
+
+            return new ArrayList<>();
+        }
+
+        private static String readAdapterName(Path i2cDevPath) {
+            try {
+                return Files.readString(i2cDevPath.resolve("name")).trim();
+            } catch (IOException e) {
+                return "unknown";
+            }
+        }
+
+        /**
+         * Parses the output of {@code i2cdetect -l}, e.g. "i2c-1\ti2c       \tbcm2835 (i2c@7e804000)  \tI2C adapter".
+         * The columns are separated by tabs, and padded with spaces. If a line doesn't contain any tabs, e.g. after
+         * copying it from a terminal, the first three columns are taken up to the next whitespace.
+         */
+        static List<I2CDevice> parseI2CDetectOutput(String output) {
+            List<I2CDevice> devices = new ArrayList<>();
+            var columns = new String[3];
+
+            int length = output.length();
+            for (int start = 0; start < length; ) {
+                int end = TextScanner.indexOf(output, '\n', start, length);
+                boolean tabs = TextScanner.indexOf(output, '\t', start, end) < end;
+
+                int pos = TextScanner.skipWhitespace(output, start, end);
+                int count = 0;
+                while (count < columns.length && pos < end) {
+                    int columnEnd = tabs
+                            ? TextScanner.indexOf(output, '\t', pos, end)
+                            : TextScanner.tokenEnd(output, pos, end);
+                    columns[count++] = output.substring(pos, TextScanner.trimEnd(output, pos, columnEnd));
+                    pos = TextScanner.skipWhitespace(output, columnEnd, end);
+                }
+
+                // The remaining part is the description, e.g. "I2C adapter"
+                int descriptionEnd = TextScanner.trimEnd(output, pos, end);
+                if (count == columns.length && pos < descriptionEnd) {
+                    devices.add(new I2CDevice(columns[0], columns[1], columns[2],
+                        output.substring(pos, descriptionEnd)));
+                }
+                start = end + 1;
+            }
+
+            return devices;
+        }
+
+        record I2CDevice(String bus, String type, String name, String description) {
+            public int getBusNumber() {
+                try {
+                    return Integer.parseInt(bus.replace("i2c-", ""));
+                } catch (NumberFormatException e) {
+                    return -1; // or throw exception
+                }
+            }
+
+            public String output() {
+                return getBusNumber() + ": " + name + ", " + description;
+            }
+        }
+    }
+
+    /**
+     * Set of 7-bit I2C addresses, stored as a 128-bit bitmap.
+     *
+     * @param low  addresses 0x00 to 0x3F
+     * @param high addresses 0x40 to 0x7F
+     */
+    record I2CAddressMap(long low, long high) {
+        static final I2CAddressMap EMPTY = new I2CAddressMap(0, 0);
+
+        public boolean contains(int address) {
+            return address < 64 ? (low >>> address & 1) != 0 : (high >>> (address - 64) & 1) != 0;
+        }
+
+        public I2CAddressMap with(int address) {
+            return address < 64
+                    ? new I2CAddressMap(low | 1L << address, high)
+                    : new I2CAddressMap(low, high | 1L << (address - 64));
+        }
+
+        public int size() {
+            return Long.bitCount(low) + Long.bitCount(high);
+        }
+
+        public boolean isEmpty() {
+            return low == 0 && high == 0;
+        }
+
+        /**
+         * Returns the lowest address in this map from the given address on.
+         *
+         * @param from first address to consider
+         * @return the address, or -1 if there is none
+         */
+        public int next(int from) {
+            if (from < 64) {
+                long bits = low & (-1L << from);
+                if (bits != 0) {
+                    return Long.numberOfTrailingZeros(bits);
+                }
+                from = 64;
+            }
+            if (from < 128) {
+                long bits = high & (-1L << (from - 64));
+                if (bits != 0) {
+                    return 64 + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Formats the addresses in ascending order, e.g. "0x1C, 0x50"
+         */
+        public String format() {
+            var formatted = new StringBuilder();
+            for (int address = next(0); address >= 0; address = next(address + 1)) {
+                if (!formatted.isEmpty()) {
+                    formatted.append(", ");
+                }
+                formatted.append(HexFormatter.format((byte) address));
+            }
+            return formatted.toString();
+        }
+    }
+
+    /**
+     * Scans I2C buses in-process, through the i2c-dev character devices, in the same way as {@code i2cdetect -y}.
+     *
+     * <p>Each address is selected with the {@code I2C_SLAVE} ioctl, which fails with {@code EBUSY} if the address
+     * is claimed by a kernel driver ("UU" in the i2cdetect output), and then probed with an SMBus quick write or
+     * read byte. All buses are scanned in parallel, each on its own virtual thread.</p>
+     *
+     * <p>To try this without hardware, load the i2c-stub module, which adds a bus with simulated chips, e.g.
+     * {@code sudo modprobe i2c-dev && sudo modprobe i2c-stub chip_addr=0x1c,0x50}.</p>
+     */
+    static class I2CBusScanner {
+        static final long I2C_TIMEOUT = 0x0702;
+        static final long I2C_SLAVE = 0x0703;
+        static final long I2C_FUNCS = 0x0705;
+        static final long I2C_SMBUS = 0x0720;
+
+        static final long I2C_FUNC_SMBUS_QUICK = 0x00010000;
+        static final long I2C_FUNC_SMBUS_READ_BYTE = 0x00020000;
+        static final long I2C_FUNC_SMBUS_READ_BYTE_DATA = 0x00080000;
+        static final long I2C_FUNC_SMBUS_READ_I2C_BLOCK = 0x04000000;
+
+        static final byte I2C_SMBUS_WRITE = 0;
+        static final byte I2C_SMBUS_READ = 1;
+        static final int I2C_SMBUS_QUICK = 0;
+        static final int I2C_SMBUS_BYTE = 1;
+        static final int I2C_SMBUS_BYTE_DATA = 2;
+        static final int I2C_SMBUS_I2C_BLOCK_DATA = 8;
+
+        /**
+         * struct i2c_smbus_ioctl_data from linux/i2c-dev.h
+         */
+        static final StructLayout SMBUS_IOCTL_DATA = MemoryLayout.structLayout(
+                JAVA_BYTE.withName("read_write"),
+                JAVA_BYTE.withName("command"),
+                MemoryLayout.paddingLayout(2),
+                JAVA_INT.withName("size"),
+                ADDRESS.withName("data"));
+
+        /**
+         * Size of union i2c_smbus_data from linux/i2c.h, which can hold a block of 32 bytes plus length and PEC.
+         */
+        static final long SMBUS_DATA_SIZE = 34;
+
+        /**
+         * How an address is probed.
+         */
+        enum ProbeStrategy {
+            /**
+             * Same as i2cdetect: read byte for 0x30-0x37 and 0x50-0x5F, where quick write can corrupt
+             * EEPROMs or lock up some chips, and quick write for all other addresses.
+             */
+            AUTO,
+            QUICK_WRITE,
+            READ_BYTE;
+
+            boolean useReadByte(int address) {
+                return switch (this) {
+                    case AUTO -> (address >= 0x30 && address <= 0x37) || (address >= 0x50 && address <= 0x5F);
+                    case QUICK_WRITE -> false;
+                    case READ_BYTE -> true;
+                };
+            }
+        }
+
+        /**
+         * @param strategy     how each address is probed
+         * @param timeout      adapter timeout while probing, or {@code null} to keep the kernel default.
+         *                     This is a setting of the bus adapter, and stays active after the scan.
+         * @param firstAddress first address to probe, i2cdetect uses 0x08
+         * @param lastAddress  last address to probe, i2cdetect uses 0x77
+         */
+        record Options(ProbeStrategy strategy, Duration timeout, int firstAddress, int lastAddress) {
+            static final Options DEFAULT = new Options(ProbeStrategy.AUTO, null, 0x08, 0x77);
+
+            /**
+             * Reads the options from the system properties {@code iochecker.i2c.probe} (auto, quick_write or
+             * read_byte) and {@code iochecker.i2c.timeout} (milliseconds), e.g.
+             * {@code jbang -Diochecker.i2c.probe=read_byte IOChecker.java i2c}.
+             */
+            static Options fromSystemProperties() {
+                var strategy = ProbeStrategy.valueOf(System.getProperty("iochecker.i2c.probe",
+                        DEFAULT.strategy().name()).toUpperCase());
+                var timeout = System.getProperty("iochecker.i2c.timeout");
+                return new Options(strategy, timeout == null ? null : Duration.ofMillis(Long.parseLong(timeout)),
+                        DEFAULT.firstAddress(), DEFAULT.lastAddress());
+            }
+        }
+
+        /**
+         * @param bus           the bus number
+         * @param present       addresses that acknowledged the probe
+         * @param busy          addresses claimed by a kernel driver, which are not probed
+         * @param durationNanos duration of the scan
+         * @param error         the reason the scan failed, or {@code null}
+         */
+        record Scan(int bus, I2CAddressMap present, I2CAddressMap busy, long durationNanos, String error) {
+        }
+
+        /**
+         * Scans the given buses in parallel.
+         *
+         * @param buses   the bus numbers
+         * @param options the scan options
+         * @return the scan per bus number
+         */
+        static Map<Integer, Scan> scanAll(List<Integer> buses, Options options) {
+            var scans = new ConcurrentHashMap<Integer, Scan>();
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                buses.forEach(bus -> executor.submit(() -> scans.put(bus, scan(bus, options))));
+            }
+            return scans;
+        }
+
+        /**
+         * Scans one bus.
+         *
+         * @param bus     the bus number
+         * @param options the scan options
+         * @return the scan result
+         */
+        static Scan scan(int bus, Options options) {
+            long start = System.nanoTime();
+            long presentLow = 0, presentHigh = 0, busyLow = 0, busyHigh = 0;
+
+            try (var arena = Arena.ofConfined()) {
+                int fd = LibC.open("/dev/i2c-" + bus, LibC.O_RDWR | LibC.O_CLOEXEC);
+                try {
+                    var funcs = arena.allocate(JAVA_LONG);
+                    LibC.ioctl(fd, I2C_FUNCS, funcs);
+                    long functionality = funcs.get(JAVA_LONG, 0);
+
+                    if (options.timeout() != null) {
+                        // The timeout is set in units of 10 ms
+                        LibC.ioctl(fd, I2C_TIMEOUT, Math.max(1, options.timeout().toMillis() / 10));
+                    }
+
+                    var request = arena.allocate(SMBUS_IOCTL_DATA);
+                    var data = arena.allocate(SMBUS_DATA_SIZE);
+
+                    for (int address = options.firstAddress(); address <= options.lastAddress(); address++) {
+                        int rc = LibC.tryIoctl(fd, I2C_SLAVE, address);
+                        if (rc == -LibC.EBUSY) {
+                            if (address < 64) busyLow |= 1L << address; else busyHigh |= 1L << (address - 64);
+                            continue;
+                        } else if (rc < 0) {
+                            throw new NativeException("ioctl I2C_SLAVE 0x" + Integer.toHexString(address), -rc);
+                        }
+
+                        boolean readByte = options.strategy().useReadByte(address);
+                        if (readByte && (functionality & I2C_FUNC_SMBUS_READ_BYTE) == 0) {
+                            readByte = false;
+                        } else if (!readByte && (functionality & I2C_FUNC_SMBUS_QUICK) == 0) {
+                            readByte = true;
+                        }
+                        if ((functionality & (readByte ? I2C_FUNC_SMBUS_READ_BYTE : I2C_FUNC_SMBUS_QUICK)) == 0) {
+                            continue; // The adapter supports neither probe, same as i2cdetect the address is skipped
+                        }
+
+                        if (smbusAccess(fd, request, data, readByte ? I2C_SMBUS_READ : I2C_SMBUS_WRITE, 0,
+                                readByte ? I2C_SMBUS_BYTE : I2C_SMBUS_QUICK) >= 0) {
+                            if (address < 64) presentLow |= 1L << address; else presentHigh |= 1L << (address - 64);
+                        }
+                    }
+                } finally {
+                    LibC.close(fd);
+                }
+            } catch (IOException e) {
+                return new Scan(bus, I2CAddressMap.EMPTY, I2CAddressMap.EMPTY, System.nanoTime() - start, e.getMessage());
+            }
+
+            return new Scan(bus, new I2CAddressMap(presentLow, presentHigh), new I2CAddressMap(busyLow, busyHigh),
+                    System.nanoTime() - start, null);
+        }
+
+        /**
+         * Executes an SMBus transfer with the I2C_SMBUS ioctl, in the same way as i2c_smbus_access() of libi2c.
+         *
+         * @return the result of the ioctl, or the negated errno if it failed
+         */
+        static int smbusAccess(int fd, MemorySegment request, MemorySegment data, byte readWrite, int command, int size) {
+            request.set(JAVA_BYTE, 0, readWrite);
+            request.set(JAVA_BYTE, 1, (byte) command);
+            request.set(JAVA_INT, 4, size);
+            request.set(ADDRESS, 8, data);
+            return LibC.tryIoctl(fd, I2C_SMBUS, request);
+        }
+    }
+
+    /**
+     * Tries to recognize sensors with the Pi4J Drivers library on each bus detected by the {@link I2CChecker}.
+     */
+    public static class I2CSensorChecker extends BaseChecker implements Checker {
+        /**
+         * The sensors recognized on each bus, by bus number.
+         */
+        static final Fact<Map<Integer, List<Sensor>>> SENSORS = new Fact<>("i2c.sensors");
+
+        @Override
+        public String name() {
+            return "i2c-sensors";
+        }
+
+        @Override
+        public Set<String> dependencies() {
+            return Set.of("i2c");
+        }
+
+        @Override
+        public Set<String> selectors() {
+            return Set.of("i2c", name());
+        }
+
+        /**
+         * The result includes the current readings of the sensors, so it can't be taken from the cache.
+         */
+        @Override
+        public boolean isCacheable() {
+            return false;
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("I2C Sensor Detection", new ArrayList<>());
+            var devices = context.get(I2CChecker.BUSES).orElse(List.of());
+
+            if (devices.isEmpty()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "Pi4J Drivers SensorDetector", "I2C sensors on the detected buses", "No I2C buses detected"));
+            }
+            var sensors = new TreeMap<Integer, List<Sensor>>();
+            devices.forEach(d -> result.addResult(detectSensors(d.getBusNumber(), sensors)));
+            context.publish(SENSORS, sensors);
+
+            return result;
+        }
+
+        private static CheckerResult.Check detectSensors(int bus, Map<Integer, List<Sensor>> detected) {
+            try {
+                var pi4j = Pi4JContexts.fromProperty("iochecker.pi4j.providers.i2c");
+                var sensors = SensorDetector.detectI2cSensors(pi4j, bus);
+                detected.put(bus, sensors);
+
+                if (sensors.isEmpty()) {
+                    return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                            "Pi4J Drivers SensorDetector on bus " + bus,
+                            "I2C sensors on bus " + bus, "No sensors could be detected, maybe there are none, or they could not be recognized by the Pi4J Drivers library.");
                 }
+
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
+                        "Pi4J Drivers SensorDetector on bus " + bus,
+                        "One or more I2C sensors on bus " + bus + " were recognized by the Pi4J Drivers library",
+                        sensors.stream()
+                                .map(s -> s.getClass().getSimpleName() + "\n" + getSensorValues(s))
+                                .collect(Collectors.joining("\n")));
+            } catch (Exception e) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
+                        "Pi4J Drivers SensorDetector on bus " + bus,
+                        "I2C sensors on bus " + bus, e.getMessage());
             }
+        }
 
-            var command = "Configuration check for " + interfaceName.toUpperCase() + " in config.txt";
-            if (!foundAny) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                        command, expectedOutput, result.toString());
+        private static String getSensorValues(Sensor sensor) {
+            String rt = " - Addresses: "
+                    + sensor.getDescriptor().getI2cAddresses().stream()
+                        .map(a -> "0x" + String.format("%02X", a))
+                        .collect(Collectors.joining(", "))
+                    + "\n";
+
+            List<SensorDescriptor.Value> valueDescriptors = sensor.getDescriptor().getValues();
+
+            float[] values = new float[valueDescriptors.size()];
+            sensor.readMeasurement(values);
+
+            for (SensorDescriptor.Value valueDescriptor : valueDescriptors) {
+                rt += " - " + valueDescriptor.getKind() + ": " + values[valueDescriptor.getIndex()] + "\n";
             }
 
-            return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                    command, expectedOutput, result.toString());
+            return rt;
         }
+    }
 
-        protected static CheckerResult.Check detectInterfaceFromDeviceTree(String interfaceType, String description) {
-            var result = new StringBuilder();
-            List<String> foundDevices = new ArrayList<>();
+    /**
+     * Measures the transaction rate of each I2C bus, with timed batches of SMBus reads from the first address
+     * that responded in the scan of the {@link I2CChecker}. The achieved bits per second are compared with the
+     * clock frequency of the bus, from {@code dtparam=i2c_arm_baudrate} in config.txt and the
+     * {@code clock-frequency} property in the device tree, to reveal buses left at 100 kHz and devices that
+     * slow down the bus by clock stretching. Only runs when selected with {@code i2c-bench}.
+     *
+     * <p>To try this without hardware, use the i2c-stub module as described for the {@link I2CBusScanner}.</p>
+     */
+    public static class I2CBenchmarkChecker extends BaseChecker implements Checker {
+        static final long DEFAULT_CLOCK_FREQUENCY = 100_000;
 
-            try {
-                var socPath = findSocPath();
-                if (socPath.isPresent()) {
-                    try (var stream = Files.walk(socPath.get(), 2)) {
-                        var interfacePaths = stream
-                                .filter(Files::isDirectory)
-                                .filter(path -> {
-                                    String name = path.getFileName().toString();
-                                    return name.contains(interfaceType);
-                                })
-                                .sorted()
-                                .toList();
-
-                        for (Path interfacePath : interfacePaths) {
-                            String dirName = interfacePath.getFileName().toString();
-
-                            // Check status
-                            Path statusPath = interfacePath.resolve("status");
-                            String status = "unknown";
-                            if (Files.exists(statusPath)) {
-                                try {
-                                    status = Files.readString(statusPath).trim().replace("\0", "");
-                                } catch (Exception e) {
-                                    System.out.printf("Could not read status for %s: %s", interfacePath, e.getMessage());
-                                }
-                            }
+        private static final int BATCH_SIZE = 64;
+        private static final int BLOCK_SIZE = 32;
 
-                            // Only include devices with okay status
-                            if ("okay".equals(status)) {
-                                foundDevices.add(dirName);
-                                result.append("✓ ").append(dirName).append(" (status: ").append(status).append(")\n");
-                            } else {
-                                result.append("✗ ").append(dirName).append(" (status: ").append(status).append(")\n");
-                            }
+        /**
+         * @param name          description of the transaction
+         * @param size          the SMBus transaction type
+         * @param functionality the functionality bit the adapter must support
+         * @param bytes         bytes on the bus, each takes 9 clock cycles including the acknowledge bit
+         */
+        record Transaction(String name, int size, long functionality, int bytes) {
+        }
+
+        static final List<Transaction> TRANSACTIONS = List.of(
+                new Transaction("Read byte data", I2CBusScanner.I2C_SMBUS_BYTE_DATA,
+                        I2CBusScanner.I2C_FUNC_SMBUS_READ_BYTE_DATA, 4),
+                new Transaction("Read I2C block of " + BLOCK_SIZE + " bytes", I2CBusScanner.I2C_SMBUS_I2C_BLOCK_DATA,
+                        I2CBusScanner.I2C_FUNC_SMBUS_READ_I2C_BLOCK, 3 + BLOCK_SIZE));
+
+        @Override
+        public String name() {
+            return "i2c-bench";
+        }
+
+        @Override
+        public Set<String> dependencies() {
+            return Set.of("i2c");
+        }
+
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("I2C Benchmark", new ArrayList<>());
+            var scans = context.get(I2CChecker.SCANS).orElse(Map.of());
+            var options = BenchmarkOptions.fromSystemProperties();
+
+            if (scans.isEmpty()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "I2C transaction rate", "A responding address on an I2C bus",
+                        LibC.isAvailable() ? "No I2C buses detected" : "Native access is not available"));
+            }
+
+            new TreeMap<>(scans).forEach((bus, scan) -> {
+                int address = scan.present().next(0);
+                if (address < 0) {
+                    result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                            "I2C transaction rate on bus " + bus, "A responding address on bus " + bus,
+                            scan.error() != null ? scan.error() : "No address responded"));
+                } else {
+                    result.addResult(benchmark(bus, address, options));
+                }
+            });
+
+            return result;
+        }
+
+        private static CheckerResult.Check benchmark(int bus, int address, BenchmarkOptions options) {
+            var command = "I2C transaction rate on bus " + bus + " with address " + HexFormatter.format((byte) address);
+            var expected = "Transactions per second close to the configured clock frequency";
+            var clock = clockFrequency(bus);
+            var output = new StringBuilder(clock.description()).append("\n");
+            double bestUsage = 0;
+
+            try (var arena = Arena.ofConfined()) {
+                int fd = LibC.open("/dev/i2c-" + bus, LibC.O_RDWR | LibC.O_CLOEXEC);
+                try {
+                    var funcs = arena.allocate(JAVA_LONG);
+                    LibC.ioctl(fd, I2CBusScanner.I2C_FUNCS, funcs);
+                    long functionality = funcs.get(JAVA_LONG, 0);
+                    LibC.ioctl(fd, I2CBusScanner.I2C_SLAVE, address);
+
+                    var request = arena.allocate(I2CBusScanner.SMBUS_IOCTL_DATA);
+                    var data = arena.allocate(I2CBusScanner.SMBUS_DATA_SIZE);
+
+                    for (Transaction transaction : TRANSACTIONS) {
+                        if ((functionality & transaction.functionality()) == 0) {
+                            output.append(transaction.name()).append(": not supported by the adapter\n");
+                            continue;
                         }
+                        var recorder = new LatencyRecorder();
+                        long nanos = measure(fd, request, data, transaction, options, recorder);
+                        double perSecond = recorder.count() * 1_000_000_000.0 / nanos;
+                        double bitsPerSecond = perSecond * transaction.bytes() * 9;
+                        output.append(String.format("%s: %.0f transactions/s, %.1f kbit/s", transaction.name(),
+                                perSecond, bitsPerSecond / 1000));
+                        if (clock.effective() > 0) {
+                            double usage = bitsPerSecond / clock.effective();
+                            bestUsage = Math.max(bestUsage, usage);
+                            output.append(String.format(" (%.0f%% of the clock)", usage * 100));
+                        }
+                        output.append("\n").append(recorder.format()).append("\n");
                     }
-                } else {
-                    result.append("Device-tree path /proc/device-tree/soc not available\n");
+                } finally {
+                    LibC.close(fd);
                 }
-            } catch (Exception e) {
-                System.out.printf("Error reading device-tree %s info: %s", interfaceType, e.getMessage());
-                result.append("Error reading device-tree info: ").append(e.getMessage()).append("\n");
+            } catch (IOException e) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, e.getMessage());
             }
 
-            var command = "Search for " + interfaceType.toUpperCase() + " in /proc/device-tree";
-            var expectedOutput = interfaceType + " device-tree entries with status=okay";
+            var status = CheckerResult.ResultStatus.PASS;
+            if (clock.effective() == 0) {
+                status = CheckerResult.ResultStatus.TO_EVALUATE;
+            } else if (clock.deviceTree().isPresent() && clock.config().isPresent()
+                    && clock.deviceTree().getAsLong() != clock.config().getAsLong()) {
+                status = CheckerResult.ResultStatus.TO_EVALUATE;
+                output.append("The clock in config.txt differs from the device tree, a reboot is needed to apply it\n");
+            } else if (clock.effective() <= DEFAULT_CLOCK_FREQUENCY) {
+                status = CheckerResult.ResultStatus.TO_EVALUATE;
+                output.append("The bus runs at the default 100 kHz, most devices support 400 kHz with dtparam=i2c_arm_baudrate=400000\n");
+            }
+            if (clock.effective() > 0 && bestUsage < 0.5) {
+                status = CheckerResult.ResultStatus.TO_EVALUATE;
+                output.append("Less than half of the clock is used, the device may be stretching the clock\n");
+            }
 
-            if (foundDevices.isEmpty()) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                        command, expectedOutput, result.toString());
+            return new CheckerResult.Check(status, command, expected, output.toString());
+        }
+
+        /**
+         * Runs timed batches of the transaction, first during the warmup and then during the measurement.
+         *
+         * @return the duration of the measurement in nanoseconds
+         */
+        private static long measure(int fd, MemorySegment request, MemorySegment data, Transaction transaction,
+                                    BenchmarkOptions options, LatencyRecorder recorder) throws IOException {
+            long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+            while (System.nanoTime() < warmupEnd) {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    transfer(fd, request, data, transaction);
+                }
             }
 
-            return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                    command, expectedOutput, result.toString());
+            long start = System.nanoTime();
+            long end = start + options.duration().toNanos();
+            long now = start;
+            while (now < end) {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    transfer(fd, request, data, transaction);
+                    long done = System.nanoTime();
+                    recorder.record(done - now);
+                    now = done;
+                }
+            }
+            return now - start;
+        }
+
+        private static void transfer(int fd, MemorySegment request, MemorySegment data, Transaction transaction)
+                throws IOException {
+            if (transaction.size() == I2CBusScanner.I2C_SMBUS_I2C_BLOCK_DATA) {
+                // The first byte holds the number of bytes to read, and is overwritten with the number read
+                data.set(JAVA_BYTE, 0, (byte) BLOCK_SIZE);
+            }
+            int rc = I2CBusScanner.smbusAccess(fd, request, data, I2CBusScanner.I2C_SMBUS_READ, 0, transaction.size());
+            if (rc < 0) {
+                throw new NativeException("ioctl I2C_SMBUS " + transaction.name(), -rc);
+            }
+        }
+
+        /**
+         * @param config     the clock set with {@code dtparam=i2c_arm_baudrate} in config.txt, only for the bus
+         *                   that has the i2c_arm alias
+         * @param deviceTree the {@code clock-frequency} of the bus controller in the device tree
+         */
+        record ClockFrequency(OptionalLong config, OptionalLong deviceTree) {
+            /**
+             * @return the clock the bus runs at, which is the device tree value as that is what the kernel uses,
+             *         or 0 if unknown
+             */
+            public long effective() {
+                return deviceTree.orElse(config.orElse(0));
+            }
+
+            public String description() {
+                return "Clock: config.txt " + (config.isPresent() ? config.getAsLong() / 1000 + " kHz" : "not set")
+                        + ", device tree " + (deviceTree.isPresent() ? deviceTree.getAsLong() / 1000 + " kHz" : "unknown");
+            }
         }
 
-        protected static Optional<Path> findSocPath() {
-            // Look for any directory in /proc/device-tree that starts with "soc"
-            Path dtBasePath = Paths.get("/proc/device-tree");
+        static ClockFrequency clockFrequency(int bus) {
+            var index = DeviceTreeIndex.shared();
+            var node = deviceTreeNode(bus, index);
+
+            var config = OptionalLong.empty();
+            var armPath = index.aliases().get("i2c_arm");
+            if (node.isPresent() && node.get().path().equals(armPath)) {
+                for (BootConfig bootConfig : BootConfig.loadDefault()) {
+                    var entry = bootConfig.param("i2c_arm_baudrate").or(() -> bootConfig.param("i2c_baudrate"));
+                    if (entry.isPresent()) {
+                        try {
+                            config = OptionalLong.of(Long.parseLong(entry.get().value().trim()));
+                        } catch (NumberFormatException e) {
+                            // Ignore an invalid value, as the firmware does
+                        }
+                    }
+                }
+            }
+
+            return new ClockFrequency(config, node.map(n -> n.cell("clock-frequency")).orElse(OptionalLong.empty()));
+        }
 
+        /**
+         * Finds the device-tree node of the bus controller, through the of_node link in sysfs, or else through
+         * the alias with the bus number, e.g. i2c1.
+         */
+        private static Optional<DeviceTreeIndex.Node> deviceTreeNode(int bus, DeviceTreeIndex index) {
             try {
-                if (Files.exists(dtBasePath)) {
-                    try (var stream = Files.list(dtBasePath)) {
-                        return stream
-                                .filter(Files::isDirectory)
-                                .filter(path -> path.getFileName().toString().startsWith("soc"))
-                                .findFirst();
+                var ofNode = Paths.get("/sys/bus/i2c/devices/i2c-" + bus + "/of_node").toRealPath().toString();
+                int base = ofNode.indexOf("/devicetree/base");
+                if (base >= 0) {
+                    var path = ofNode.substring(base + "/devicetree/base".length());
+                    var node = index.node(path.isEmpty() ? "/" : path);
+                    if (node.isPresent()) {
+                        return node;
                     }
                 }
             } catch (IOException e) {
-                System.err.printf("Error reading device-tree info: %s", e.getMessage());
+                // No of_node, e.g. for i2c-stub or when reading a device-tree snapshot
             }
-
-            return Optional.empty();
+            return Optional.ofNullable(index.aliases().get("i2c" + bus)).flatMap(index::node);
         }
     }
 
-    static class GPIOChecker extends BaseChecker {
-        public static CheckerResult detect() {
-            return new CheckerResult("GPIO Detection", List.of(
-                    detectGpioDevicesWithTools()
-            ));
+    /**
+     * Measures how fast each sensor recognized by the {@link I2CSensorChecker} can be read: the latency of a
+     * single {@link Sensor#readMeasurement(float[])} and the sustained reads per second. When there are several
+     * sensors on one bus, they are also read at the same time, each on its own virtual thread, to show how much
+     * they slow each other down. Only runs when selected with {@code sensor-bench}.
+     */
+    public static class SensorBenchmarkChecker extends BaseChecker implements Checker {
+        @Override
+        public String name() {
+            return "sensor-bench";
         }
 
-        private static CheckerResult.Check detectGpioDevicesWithTools() {
-            var found = new ArrayList<String>();
+        @Override
+        public Set<String> dependencies() {
+            return Set.of("i2c-sensors");
+        }
 
-            try {
-                Path[] commonPaths = {
-                        Path.of("/usr/bin/gpiodetect"),
-                        Path.of("/usr/local/bin/gpiodetect"),
-                        Path.of("/bin/gpiodetect")
-                };
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
 
-                for (Path path : commonPaths) {
-                    if (Files.exists(path) && Files.isExecutable(path)) {
-                        var output = CommandExecutor.execute(path.toString());
-                        if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
-                            found.add(output.getOutputMessage());
-                        }
-                    }
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("Sensor Benchmark", new ArrayList<>());
+            var sensors = context.get(I2CSensorChecker.SENSORS).orElse(Map.of());
+            var options = BenchmarkOptions.fromSystemProperties();
+
+            if (sensors.values().stream().allMatch(List::isEmpty)) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "Sensor read benchmark", "Sensors recognized by the Pi4J Drivers library", "No sensors detected"));
+            }
+
+            sensors.forEach((bus, busSensors) -> {
+                busSensors.forEach(sensor -> result.addResult(benchmark(bus, sensor, options)));
+                if (busSensors.size() > 1) {
+                    result.addResult(benchmarkConcurrent(bus, busSensors, options));
                 }
+            });
+
+            return result;
+        }
+
+        private static CheckerResult.Check benchmark(int bus, Sensor sensor, BenchmarkOptions options) {
+            var command = "Read latency of " + sensor.getClass().getSimpleName() + " on bus " + bus;
+            var expected = "Sustained reads per second and latency percentiles";
+            try {
+                var recorder = new LatencyRecorder();
+                long nanos = measure(sensor, options, recorder);
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS, command, expected,
+                        recorder.count() + " reads in " + LatencyRecorder.formatNanos(nanos) + ", "
+                                + BenchmarkOptions.formatRate(recorder.count(), nanos) + "\n" + recorder.format());
             } catch (Exception e) {
-                System.out.printf("Error detecting GPIO devices with gpiodetect: %s", e.getMessage());
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, e.getMessage());
             }
+        }
 
-            var command = "gpiodetect";
-            var expectedOutput = "gpiochip0 [pinctrl-bcm2835] (54 lines) or similar";
+        private static CheckerResult.Check benchmarkConcurrent(int bus, List<Sensor> sensors, BenchmarkOptions options) {
+            var command = "Concurrent reads of " + sensors.size() + " sensors on bus " + bus;
+            var expected = "Reads per second of each sensor while all sensors on the bus are read at the same time";
+            var recorders = sensors.stream().map(s -> new LatencyRecorder()).toList();
+            var futures = new ArrayList<Future<Long>>();
 
-            if (found.isEmpty()) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                        command, expectedOutput, "");
-            } else {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                        command, expectedOutput,
-                        found.stream()
-                                .map(String::trim)
-                                .distinct()
-                                .sorted()
-                                .collect(Collectors.joining("\n"))
-                );
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < sensors.size(); i++) {
+                    var sensor = sensors.get(i);
+                    var recorder = recorders.get(i);
+                    futures.add(executor.submit(() -> measure(sensor, options, recorder)));
+                }
+
+                var output = new StringBuilder();
+                var total = new LatencyRecorder();
+                long slowest = 0;
+                for (int i = 0; i < sensors.size(); i++) {
+                    long nanos = futures.get(i).get();
+                    slowest = Math.max(slowest, nanos);
+                    total.add(recorders.get(i));
+                    output.append(sensors.get(i).getClass().getSimpleName()).append(": ")
+                            .append(BenchmarkOptions.formatRate(recorders.get(i).count(), nanos)).append(", ")
+                            .append(recorders.get(i).format()).append("\n");
+                }
+                output.append("Bus total: ").append(BenchmarkOptions.formatRate(total.count(), slowest));
+
+                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS, command, expected, output.toString());
+            } catch (ExecutionException e) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected,
+                        String.valueOf(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, "Interrupted");
+            }
+        }
+
+        /**
+         * Reads the sensor in a loop, first during the warmup and then during the measurement.
+         *
+         * @return the duration of the measurement in nanoseconds
+         */
+        private static long measure(Sensor sensor, BenchmarkOptions options, LatencyRecorder recorder) {
+            float[] values = new float[sensor.getDescriptor().getValues().size()];
+
+            long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+            while (System.nanoTime() < warmupEnd) {
+                sensor.readMeasurement(values);
             }
+
+            long start = System.nanoTime();
+            long end = start + options.duration().toNanos();
+            long now = start;
+            while (now < end) {
+                sensor.readMeasurement(values);
+                long done = System.nanoTime();
+                recorder.record(done - now);
+                now = done;
+            }
+            return now - start;
         }
     }
 
-    static class PWMChecker extends BaseChecker {
+    public static class SPIChecker extends BaseChecker implements Checker {
+        @Override
+        public String name() {
+            return "spi";
+        }
+
+        @Override
+        public boolean isAffectedBy(Path changed) {
+            return isConfigFile(changed) || isDevice(changed, "spidev") || changed.startsWith(WatchMode.SYSFS_PATHS.get(1));
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            return detect();
+        }
+
         public static CheckerResult detect() {
-            return new CheckerResult("PWM Detection", List.of(
-                detectConfigSetting("dtoverlay=pwm", "PWM", "dtoverlay=pwm (or dtoverlay=pwm-2chan for 2-channel PWM)"),
-                detectPwmChips(),
-                detectPwmFromPinctrl()
+            return new CheckerResult("SPI Detection", List.of(
+                detectConfigSetting(List.of("dtparam=spi"), "SPI", "dtparam=spi=on"),
+                detectInterfaceFromDeviceTree("spi", "SPI bus controller"),
+                detectSpi()
             ));
         }
 
-        private static CheckerResult.Check detectPwmFromPinctrl() {
+        private static CheckerResult.Check detectSpi() {
             var result = new StringBuilder();
 
             try {
-                ProcessBuilder processBuilder = new ProcessBuilder("pinctrl");
-                processBuilder.redirectErrorStream(true);
-                Process process = processBuilder.start();
-
-                try (var reader = new java.io.BufferedReader(
-                    new java.io.InputStreamReader(process.getInputStream()))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        if (line.contains("PWM")) {
-                            result.append(line).append("\n");
-                        }
+                Path pwmPath = Paths.get("/sys/bus/spi/devices");
+                if (Files.exists(pwmPath)) {
+                    try (var stream = Files.walk(pwmPath, 2)) {
+                        stream
+                            .map(f -> f.getFileName() + " ")
+                            .filter(f -> f.startsWith("spi"))
+                            .sorted()
+                            .forEach(result::append);
                     }
                 }
-
-                process.waitFor();
             } catch (Exception e) {
-                System.err.printf("Could not execute pinctrl command: %s", e.getMessage());
+                System.err.printf("Error detecting SPI: %s", e.getMessage());
             }
 
-            var command = "pinctrl | grep PWM";
-            var expectedOutput = "GPIO line(s) with PWM function (e.g., GPIO18 = PWM0_CHAN2)";
+            var command = "ls -l /sys/bus/spi/devices";
+            var expectedOutput = "One or more spiX.Y (X and Y = numbers)";
 
             if (result.isEmpty()) {
                 return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
@@ -529,343 +5280,677 @@ public class IOChecker {
                     command, expectedOutput, result.toString());
             }
         }
+    }
 
-        private static CheckerResult.Check detectPwmChips() {
-            var result = new StringBuilder();
+    /**
+     * Full-duplex transfers on one SPI device at a fixed clock. The transport is chosen with the system property
+     * {@code iochecker.spi.transport}, so the SPI benchmark can also run without hardware:
+     * <ul>
+     *     <li>spidev (default): the SPI_IOC_MESSAGE ioctl on /dev/spidevB.C, directly from the buffers</li>
+     *     <li>pi4j: the SPI of Pi4J, with the providers from {@code iochecker.pi4j.providers.spi}</li>
+     *     <li>loopback: copies the written bytes into the read buffer, and waits as long as the transfer would
+     *     take on the wire. Like spidev, it rejects transfers larger than bufsiz.</li>
+     * </ul>
+     */
+    interface SpiTransport extends AutoCloseable {
+        /**
+         * Writes and reads at the same time.
+         *
+         * @param write  the bytes to write, from position 0
+         * @param read   receives the bytes read, from position 0
+         * @param length the number of bytes
+         * @throws IOException if the transfer failed, e.g. with EMSGSIZE when it is larger than bufsiz
+         */
+        void transfer(ByteBuffer write, ByteBuffer read, int length) throws IOException;
 
-            try {
-                Path pwmPath = Paths.get("/sys/class/pwm");
-                if (Files.exists(pwmPath)) {
-                    try (var stream = Files.walk(pwmPath, 2)) {
-                        stream
-                            .map(f -> f.getFileName() + " ")
-                            .filter(f -> f.startsWith("pwmchip"))
-                            .sorted()
-                            .forEach(result::append);
-                    }
+        @Override
+        void close() throws IOException;
+
+        @FunctionalInterface
+        interface Factory {
+            SpiTransport open(int bus, int chipSelect, int speedHz, int bufsiz) throws IOException;
+        }
+
+        static Factory fromSystemProperties() {
+            return switch (System.getProperty("iochecker.spi.transport", "spidev").toLowerCase()) {
+                case "pi4j" -> Pi4JSpi::new;
+                case "loopback" -> (bus, chipSelect, speedHz, bufsiz) -> new Loopback(speedHz, bufsiz);
+                default -> (bus, chipSelect, speedHz, bufsiz) -> new Spidev(bus, chipSelect, speedHz);
+            };
+        }
+
+        /**
+         * Transfers with the spidev ioctl, see linux/spi/spidev.h.
+         */
+        class Spidev implements SpiTransport {
+            /**
+             * _IOW(SPI_IOC_MAGIC, 0, char[sizeof(struct spi_ioc_transfer)]) for a single transfer
+             */
+            static final long SPI_IOC_MESSAGE_1 = 0x40206B00L;
+
+            /**
+             * struct spi_ioc_transfer from linux/spi/spidev.h
+             */
+            static final StructLayout SPI_IOC_TRANSFER = MemoryLayout.structLayout(
+                    JAVA_LONG.withName("tx_buf"),
+                    JAVA_LONG.withName("rx_buf"),
+                    JAVA_INT.withName("len"),
+                    JAVA_INT.withName("speed_hz"),
+                    MemoryLayout.paddingLayout(8));
+
+            private final Arena arena = Arena.ofConfined();
+            private final MemorySegment request = arena.allocate(SPI_IOC_TRANSFER);
+            private final Map<ByteBuffer, Long> addresses = new IdentityHashMap<>();
+            private final int fd;
+
+            Spidev(int bus, int chipSelect, int speedHz) throws IOException {
+                fd = LibC.open("/dev/spidev" + bus + "." + chipSelect, LibC.O_RDWR | LibC.O_CLOEXEC);
+                request.set(JAVA_INT, 20, speedHz);
+            }
+
+            @Override
+            public void transfer(ByteBuffer write, ByteBuffer read, int length) throws IOException {
+                request.set(JAVA_LONG, 0, address(write));
+                request.set(JAVA_LONG, 8, address(read));
+                request.set(JAVA_INT, 16, length);
+                LibC.ioctl(fd, SPI_IOC_MESSAGE_1, request);
+            }
+
+            /**
+             * The buffers are reused for many transfers, so their addresses are looked up only once.
+             */
+            private long address(ByteBuffer buffer) {
+                return addresses.computeIfAbsent(buffer, b -> MemorySegment.ofBuffer(b).address());
+            }
+
+            @Override
+            public void close() {
+                LibC.close(fd);
+                arena.close();
+            }
+        }
+
+        /**
+         * Transfers with the SPI of Pi4J, which uses arrays, so the bytes are copied from and to the buffers.
+         */
+        class Pi4JSpi implements SpiTransport {
+            private final Spi spi;
+            private byte[] writeArray = new byte[0];
+            private byte[] readArray = new byte[0];
+
+            Pi4JSpi(int bus, int chipSelect, int speedHz, int bufsiz) {
+                var pi4j = Pi4JContexts.fromProperty("iochecker.pi4j.providers.spi");
+                spi = pi4j.create(Spi.newConfigBuilder(pi4j)
+                        .id("iochecker-spi-" + bus + "-" + chipSelect + "-" + speedHz)
+                        .bus(bus)
+                        .chipSelect(chipSelect)
+                        .baud(speedHz)
+                        .build());
+            }
+
+            @Override
+            public void transfer(ByteBuffer write, ByteBuffer read, int length) {
+                if (writeArray.length < length) {
+                    writeArray = new byte[length];
+                    readArray = new byte[length];
                 }
-            } catch (Exception e) {
-                System.err.printf("Error detecting PWM chips: %s", e.getMessage());
+                write.get(0, writeArray, 0, length);
+                spi.transfer(writeArray, 0, readArray, 0, length);
+                read.put(0, readArray, 0, length);
+            }
+
+            @Override
+            public void close() {
+                spi.close();
+            }
+        }
+
+        /**
+         * Simulated device with MOSI connected to MISO.
+         */
+        class Loopback implements SpiTransport {
+            private static final int EMSGSIZE = 90;
+
+            private final int speedHz;
+            private final int bufsiz;
+
+            Loopback(int speedHz, int bufsiz) {
+                this.speedHz = speedHz;
+                this.bufsiz = bufsiz;
             }
 
-            var command = "ls -l /sys/class/pwm/";
-            var expectedOutput = "One or more pwmchipX (X = number)";
+            @Override
+            public void transfer(ByteBuffer write, ByteBuffer read, int length) throws IOException {
+                if (length > bufsiz) {
+                    throw new NativeException("ioctl SPI_IOC_MESSAGE", EMSGSIZE);
+                }
+                read.put(0, write, 0, length);
+                long end = System.nanoTime() + length * 8L * 1_000_000_000L / speedHz;
+                while (System.nanoTime() < end) {
+                    Thread.onSpinWait();
+                }
+            }
 
-            if (result.isEmpty()) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                    command, expectedOutput, "");
-            } else {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                    command, expectedOutput, result.toString());
+            @Override
+            public void close() {
             }
         }
     }
 
-    static class I2CChecker extends BaseChecker {
+    /**
+     * Measures the SPI throughput of each device in /sys/bus/spi/devices: full-duplex transfers of increasing size,
+     * at clock rates up to the {@code spi-max-frequency} of the device in the device tree. Transfers larger than
+     * the spidev {@code bufsiz} module parameter are rejected by the kernel, so they are split like a driver would,
+     * which shows the cost of the extra transfers. Only runs when selected with {@code spi-bench}.
+     */
+    public static class SPIBenchmarkChecker extends BaseChecker implements Checker {
+        static final Path BUFSIZ = Paths.get("/sys/module/spidev/parameters/bufsiz");
+        static final int DEFAULT_BUFSIZ = 4096;
+        static final List<Integer> SIZES = List.of(16, 64, 256, 1024, 4096, 16384, 65536);
+        static final List<Integer> SPEEDS = List.of(1_000_000, 8_000_000, 32_000_000);
 
-        public static CheckerResult detect() {
-            var devices = detectI2CDevices();
+        @Override
+        public String name() {
+            return "spi-bench";
+        }
 
-            var result = new CheckerResult("I2C Detection", new ArrayList<>(List.of(
-                detectConfigSetting("dtparam=i2c", "I2C", "dtparam=i2c_arm=on"),
-                detectInterfaceFromDeviceTree("i2c", "I2C bus controller"),
-                detectI2CDevicesWithCommand(devices)
-            )));
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
 
-            if (!devices.isEmpty()) {
-                devices.forEach(d -> {
-                    result.addResult(detectI2CUsedAddresses(d));
-                    result.addResult(detectSensors(d.getBusNumber()));
-                });
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("SPI Benchmark", new ArrayList<>());
+            var options = BenchmarkOptions.fromSystemProperties();
+            var factory = SpiTransport.fromSystemProperties();
+            int bufsiz = readBufsiz();
+
+            var devices = listDevices();
+            if (devices.isEmpty() && "loopback".equalsIgnoreCase(System.getProperty("iochecker.spi.transport"))) {
+                devices = List.of("spi0.0");
+            }
+            if (devices.isEmpty()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "SPI throughput", "One or more spiX.Y devices", "No SPI devices detected"));
+            }
+
+            for (String device : devices) {
+                var maxSpeed = maxSpeed(device);
+                var speeds = new TreeSet<Integer>();
+                SPEEDS.stream().filter(s -> maxSpeed.isEmpty() || s <= maxSpeed.getAsLong()).forEach(speeds::add);
+                maxSpeed.ifPresent(s -> speeds.add((int) Math.min(s, Integer.MAX_VALUE)));
+                for (int speed : speeds) {
+                    result.addResult(benchmark(device, speed, maxSpeed, bufsiz, factory, options));
+                }
             }
 
             return result;
         }
 
-        private static CheckerResult.Check detectI2CDevicesWithCommand(List<I2CDevice> devices) {
-            String expectedOutput = "One or more devices, e.g. 'i2c-1' (I2C bus adapters detected by 'i2cdetect -l')";
+        private static CheckerResult.Check benchmark(String device, int speedHz, OptionalLong maxSpeed, int bufsiz,
+                                                     SpiTransport.Factory factory, BenchmarkOptions options) {
+            var command = "SPI throughput of " + device + " at " + speedHz / 1000 + " kHz";
+            var expected = "MB/s and latency per transfer size, bufsiz " + bufsiz + " bytes";
+            var output = new StringBuilder("spi-max-frequency: ")
+                    .append(maxSpeed.isPresent() ? maxSpeed.getAsLong() / 1000 + " kHz" : "unknown").append("\n");
 
-            if (devices.isEmpty()) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                    "i2cdetect -l",
-                    expectedOutput, "");
-            } else {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                    "i2cdetect -l",
-                    expectedOutput,
-                    devices.stream()
-                        .map(I2CDevice::output)
-                        .collect(Collectors.joining("\n")));
+            int separator = device.indexOf('.');
+            int bus = Integer.parseInt(device.substring(3, separator));
+            int chipSelect = Integer.parseInt(device.substring(separator + 1));
+            int maxSize = SIZES.get(SIZES.size() - 1);
+            var write = ByteBuffer.allocateDirect(maxSize);
+            var read = ByteBuffer.allocateDirect(maxSize);
+            for (int i = 0; i < maxSize; i++) {
+                write.put(i, (byte) i);
             }
-        }
-
-        private static CheckerResult.Check detectI2CUsedAddresses(I2CDevice device) {
-            var result = new StringBuilder();
-            String expectedOutput = "One or more I2C used addresses detected on bus " + device.getBusNumber();
-            List<Byte> addresses = new ArrayList<>();
 
-            try {
-                var output = CommandExecutor.execute("i2cdetect -y " + device.getBusNumber());
-                if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
-                    addresses = parseI2CDeviceAddresses(output.getOutputMessage());
+            try (var transport = factory.open(bus, chipSelect, speedHz, bufsiz)) {
+                long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+                while (System.nanoTime() < warmupEnd) {
+                    transport.transfer(write, read, Math.min(SIZES.get(0), bufsiz));
+                }
 
-                    if (!addresses.isEmpty()) {
-                        result.append("Found ").append(addresses.size())
-                            .append(" used addres(ses) on bus ").append(device.getBusNumber())
-                            .append(": ");
-                        result.append(addresses.stream()
-                            .map(HexFormatter::format).sorted()
-                            .collect(Collectors.joining(", ")));
-                    } else {
-                        result.append("No used addresses found on bus ").append(device.getBusNumber()).append("\n");
+                long durationPerSize = options.duration().toNanos() / SIZES.size();
+                for (int size : SIZES) {
+                    var recorder = new LatencyRecorder();
+                    int chunk = Math.min(size, bufsiz);
+                    var writeChunks = split(write, size, chunk);
+                    var readChunks = split(read, size, chunk);
+                    long start = System.nanoTime();
+                    long end = start + durationPerSize;
+                    long now = start;
+                    while (now < end) {
+                        for (int i = 0; i < writeChunks.length; i++) {
+                            transport.transfer(writeChunks[i], readChunks[i], writeChunks[i].capacity());
+                        }
+                        long done = System.nanoTime();
+                        recorder.record(done - now);
+                        now = done;
                     }
+                    long nanos = now - start;
+                    output.append(String.format("%6d bytes: %7.3f MB/s, %s", size,
+                            recorder.count() * (double) size / nanos * 1_000_000_000.0 / 1_000_000, recorder.format()));
+                    if (size > bufsiz) {
+                        output.append(", split in ").append((size + chunk - 1) / chunk).append(" transfers");
+                    }
+                    output.append("\n");
                 }
             } catch (Exception e) {
-                System.err.printf("Error detecting I2C addresses on bus %s: %s", device.getBusNumber(), e.getMessage());
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                    "Error scanning I2C bus " + device.getBusNumber(),
-                    expectedOutput, e.getMessage());
+                output.append("Failed: ").append(e.getMessage());
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, expected, output.toString());
             }
 
-            if (addresses.isEmpty()) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                    "i2cdetect -y " + device.getBusNumber(),
-                    expectedOutput, result.toString());
-            } else {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                    "i2cdetect -y " + device.getBusNumber(),
-                    expectedOutput, result.toString());
+            return new CheckerResult.Check(CheckerResult.ResultStatus.PASS, command, expected, output.toString());
+        }
+
+        /**
+         * Splits the first bytes of the buffer in chunks of at most the given size, up front, so the measured loop
+         * doesn't allocate.
+         */
+        private static ByteBuffer[] split(ByteBuffer buffer, int size, int chunk) {
+            var chunks = new ByteBuffer[(size + chunk - 1) / chunk];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = buffer.slice(i * chunk, Math.min(chunk, size - i * chunk));
+            }
+            return chunks;
+        }
+
+        static int readBufsiz() {
+            try {
+                return Integer.parseInt(Files.readString(BUFSIZ).trim());
+            } catch (IOException | NumberFormatException e) {
+                return DEFAULT_BUFSIZ;
             }
         }
 
-        static List<Byte> parseI2CDeviceAddresses(String output) {
-            List<Byte> addresses = new ArrayList<>();
+        private static List<String> listDevices() {
+            try (var stream = Files.list(WatchMode.SYSFS_PATHS.get(1))) {
+                return stream.map(p -> p.getFileName().toString())
+                        .filter(name -> name.matches("spi\\d+\\.\\d+"))
+                        .sorted()
+                        .toList();
+            } catch (IOException e) {
+                return List.of();
+            }
+        }
 
+        /**
+         * @return the spi-max-frequency of the device, from the device tree node linked by of_node in sysfs
+         */
+        private static OptionalLong maxSpeed(String device) {
             try {
-                for (String line : output.split("\n")) {
-                    line = line.trim();
-                    if (line.startsWith("00: ") || line.startsWith("10: ") ||
-                        line.startsWith("20: ") || line.startsWith("30: ") || line.startsWith("40: ") ||
-                        line.startsWith("50: ") || line.startsWith("60: ") || line.startsWith("70: ")) {
+                var ofNode = WatchMode.SYSFS_PATHS.get(1).resolve(device).resolve("of_node").toRealPath().toString();
+                int base = ofNode.indexOf("/devicetree/base");
+                if (base >= 0) {
+                    return DeviceTreeIndex.shared().node(ofNode.substring(base + "/devicetree/base".length()))
+                            .map(node -> node.cell("spi-max-frequency"))
+                            .orElse(OptionalLong.empty());
+                }
+            } catch (IOException e) {
+                // No device-tree node, e.g. for a simulated device
+            }
+            return OptionalLong.empty();
+        }
+    }
 
-                        // Skip the row number at the beginning
-                        String[] parts = line.substring(3).split("\\s+");
+    /**
+     * Lists the serial ports from /sys/class/tty. Only ttys with a {@code device} link belong to hardware, the
+     * virtual consoles and pseudo-terminals don't have one. The 8250 driver registers a number of ports that
+     * may not exist, those have port type 0 (unknown) and are skipped.
+     */
+    static class SerialPortInventory {
+        static final Path SYS_CLASS_TTY = Paths.get("/sys/class/tty");
 
-                        // Start from index 1 to skip the row number (00:, 10:, etc.)
-                        for (int i = 0; i < parts.length; i++) {
-                            String part = parts[i].trim();
-                            // Valid addresses are two hex digits (not -- or UU)
-                            if (part.matches("[0-9a-fA-F]{2}")) {
-                                addresses.add((byte) Integer.parseInt(part.toLowerCase(), 16));
-                            }
-                        }
-                    }
+        /**
+         * @param name     the tty name, e.g. ttyAMA0
+         * @param driver   the driver, e.g. uart-pl011, or "unknown"
+         * @param aliases  links to the port, e.g. /dev/serial0 or /dev/serial/by-id/usb-FTDI_...
+         * @param readable if the device can be read by this user
+         * @param writable if the device can be written by this user
+         */
+        record Port(String name, String driver, List<String> aliases, boolean readable, boolean writable) {
+            /**
+             * E.g. "/dev/ttyAMA0 (uart-pl011) as /dev/serial0, readable, writable"
+             */
+            public String output() {
+                var output = new StringBuilder("/dev/").append(name).append(" (").append(driver).append(")");
+                if (!aliases.isEmpty()) {
+                    output.append(" as ").append(String.join(", ", aliases));
                 }
-            } catch (Exception e) {
-                System.err.printf("Error parsing I2C addresses: %s", e.getMessage());
+                if (!readable && !writable) {
+                    output.append(", no permissions");
+                }
+                if (readable) {
+                    output.append(", readable");
+                }
+                if (writable) {
+                    output.append(", writable");
+                }
+                return output.toString();
             }
+        }
 
-            return addresses;
+        static List<Port> read() {
+            return read(SYS_CLASS_TTY, WatchMode.DEV);
         }
 
-        private static List<I2CDevice> detectI2CDevices() {
-            try {
-                var output = CommandExecutor.execute("i2cdetect -l");
-                if (output.isSuccess() && !output.getOutputMessage().trim().isEmpty()) {
-                    return parseI2CDetectOutput(output.getOutputMessage());
+        /**
+         * @param sysClassTty the tty class directory, normally /sys/class/tty
+         * @param dev         the device directory, normally /dev
+         * @return the serial ports, sorted by name
+         */
+        static List<Port> read(Path sysClassTty, Path dev) {
+            var aliases = readAliases(dev);
+            var ports = new ArrayList<Port>();
+            try (var stream = Files.list(sysClassTty)) {
+                for (Path tty : stream.sorted().toList()) {
+                    if (!Files.exists(tty.resolve("device")) || isUnknown8250Port(tty)) {
+                        continue;
+                    }
+                    var name = tty.getFileName().toString();
+                    var device = dev.resolve(name);
+                    ports.add(new Port(name, driver(tty), aliases.getOrDefault(name, List.of()),
+                            Files.isReadable(device), Files.isWritable(device)));
                 }
-            } catch (Exception e) {
-                System.err.printf("Error detecting I2C devices with i2cdetect command: %s", e.getMessage());
+            } catch (IOException e) {
+                System.err.printf("Error listing serial ports in %s: %s%n", sysClassTty, e.getMessage());
             }
+            return ports;
+        }
 
-            return new ArrayList<>();
+        private static String driver(Path tty) {
+            try {
+                return tty.resolve("device/driver").toRealPath().getFileName().toString();
+            } catch (IOException e) {
+                return "unknown";
+            }
         }
 
-        private static List<I2CDevice> parseI2CDetectOutput(String output) {
-            List<I2CDevice> devices = new ArrayList<>();
+        private static boolean isUnknown8250Port(Path tty) {
+            try {
+                return tty.getFileName().toString().startsWith("ttyS")
+                        && Files.readString(tty.resolve("type")).trim().equals("0");
+            } catch (IOException e) {
+                return false;
+            }
+        }
 
-            for (String line : output.split("\n")) {
-                line = line.trim();
-                if (line.isEmpty()) {
-                    continue;
+        /**
+         * @return the links in /dev/serial* and /dev/serial/by-id by tty name, e.g. ttyAMA0 -> [/dev/serial0]
+         */
+        private static Map<String, List<String>> readAliases(Path dev) {
+            var links = new ArrayList<Path>();
+            try (var stream = Files.list(dev)) {
+                stream.filter(p -> p.getFileName().toString().startsWith("serial") && Files.isSymbolicLink(p))
+                        .forEach(links::add);
+            } catch (IOException e) {
+                // No aliases
+            }
+            try (var stream = Files.list(dev.resolve("serial/by-id"))) {
+                stream.forEach(links::add);
+            } catch (IOException e) {
+                // No USB serial adapters
+            }
+
+            var aliases = new TreeMap<String, List<String>>();
+            links.stream().sorted().forEach(link -> {
+                try {
+                    aliases.computeIfAbsent(link.toRealPath().getFileName().toString(), k -> new ArrayList<>())
+                            .add(link.toString());
+                } catch (IOException e) {
+                    // Dangling link
                 }
+            });
+            return aliases;
+        }
+    }
 
-                // Split by whitespace (multiple spaces/tabs)
-                String[] parts = line.split("\\s+");
+    /**
+     * Measures the throughput and latency of a serial port: frames of increasing size are written, read back
+     * and compared. By default a pseudo-terminal pair is used, so it runs without hardware: the frames are written
+     * to the slave side, as an application writes to a UART, and read from the master side. To test a real port,
+     * connect its TX and RX pins and set it with {@code -Diochecker.serial.port=/dev/ttyAMA0}, and the baud rate
+     * with {@code -Diochecker.serial.baud}. The port is written and read through NIO channels with reusable
+     * direct buffers. Only runs when selected with {@code serial-bench}.
+     */
+    public static class SerialBenchmarkChecker extends BaseChecker implements Checker {
+        static final List<Integer> FRAME_SIZES = List.of(16, 64, 256, 1024);
+        static final Duration READ_TIMEOUT = Duration.ofMillis(500);
 
-                if (parts.length >= 4) {
-                    String bus = parts[0];          // e.g., "i2c-1"
-                    String type = parts[1];         // e.g., "i2c"
-                    String name = parts[2];         // e.g., "Synopsys" or "107d508200.i2c"
+        /**
+         * A file descriptor as NIO channel, for the master side of a pseudo-terminal, which has no path to open.
+         * Only direct buffers are supported.
+         */
+        static class FdChannel implements ByteChannel {
+            private final int fd;
+            private boolean open = true;
 
-                    // Join remaining parts as description
-                    String description = String.join(" ", Arrays.copyOfRange(parts, 3, parts.length));
+            FdChannel(int fd) {
+                this.fd = fd;
+            }
 
-                    devices.add(new I2CDevice(bus, type, name, description));
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (!LibC.pollIn(fd, (int) READ_TIMEOUT.toMillis())) {
+                    return 0;
                 }
+                int count = (int) LibC.read(fd, MemorySegment.ofBuffer(dst));
+                dst.position(dst.position() + count);
+                return count;
             }
 
-            return devices;
-        }
-
-        private static CheckerResult.Check detectSensors(int bus) {
-            Context pi4j = null;
-            
-            try {
-                pi4j = Pi4J.newAutoContext();
-                var sensors = SensorDetector.detectI2cSensors(pi4j, bus);
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int count = (int) LibC.write(fd, MemorySegment.ofBuffer(src));
+                src.position(src.position() + count);
+                return count;
+            }
 
-                if (sensors.isEmpty()) {
-                    return new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
-                            "Pi4J Drivers SensorDetector on bus " + bus,
-                            "I2C sensors on bus " + bus, "No sensors could be detected, maybe there are none, or they could not be recognized by the Pi4J Drivers library.");
-                }
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
 
-                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                        "Pi4J Drivers SensorDetector on bus " + bus,
-                        "One or more I2C sensors on bus " + bus + " were recognized by the Pi4J Drivers library",
-                        sensors.stream()
-                                .map(s -> s.getClass().getSimpleName() + "\n" + getSensorValues(s))
-                                .collect(Collectors.joining("\n")));
-            } catch (Exception e) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                        "Pi4J Drivers SensorDetector on bus " + bus,
-                        "I2C sensors on bus " + bus, e.getMessage());
-            } finally {
-                if (pi4j != null) {
-                    pi4j.shutdown();
+            @Override
+            public void close() {
+                if (open) {
+                    open = false;
+                    LibC.close(fd);
                 }
             }
         }
 
-        private static String getSensorValues(Sensor sensor) {
-            String rt = " - Addresses: "
-                    + sensor.getDescriptor().getI2cAddresses().stream()
-                        .map(a -> "0x" + String.format("%02X", a))
-                        .collect(Collectors.joining(", "))
-                    + "\n";
-
-            List<SensorDescriptor.Value> valueDescriptors = sensor.getDescriptor().getValues();
+        @Override
+        public String name() {
+            return "serial-bench";
+        }
 
-            float[] values = new float[valueDescriptors.size()];
-            sensor.readMeasurement(values);
+        @Override
+        public boolean isOptIn() {
+            return true;
+        }
 
-            for (SensorDescriptor.Value valueDescriptor : valueDescriptors) {
-                rt += " - " + valueDescriptor.getKind() + ": " + values[valueDescriptor.getIndex()] + "\n";
+        @Override
+        public CheckerResult run(CheckContext context) {
+            var result = new CheckerResult("Serial Benchmark", new ArrayList<>());
+            if (!LibC.isAvailable()) {
+                result.addResult(new CheckerResult.Check(CheckerResult.ResultStatus.TO_EVALUATE,
+                        "Serial throughput", "Native access to configure the port", "Native access is not available"));
+                return result;
             }
 
-            return rt;
+            var port = System.getProperty("iochecker.serial.port");
+            int baud = Integer.getInteger("iochecker.serial.baud", 0);
+            result.addResult(port == null ? benchmarkPty(baud) : benchmarkLoopback(port, baud));
+            return result;
         }
 
-        private record I2CDevice(String bus, String type, String name, String description) {
-            public int getBusNumber() {
-                try {
-                    return Integer.parseInt(bus.replace("i2c-", ""));
-                } catch (NumberFormatException e) {
-                    return -1; // or throw exception
+        private static CheckerResult.Check benchmarkPty(int baud) {
+            var command = "Serial throughput over a pseudo-terminal pair";
+            int master = -1;
+            int slave = -1;
+            try {
+                master = LibC.openPty();
+                var slavePath = LibC.ptsName(master);
+                // The termios settings are kept on this descriptor, the frames go through the channels
+                slave = LibC.open(slavePath, LibC.O_RDWR | LibC.O_NOCTTY | LibC.O_CLOEXEC);
+                LibC.makeRaw(slave, baud, READ_TIMEOUT);
+                try (var slaveChannel = FileChannel.open(Paths.get(slavePath), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     var masterChannel = new FdChannel(master)) {
+                    master = -1;
+                    return benchmark(command + " " + slavePath, slaveChannel, masterChannel, LibC.baud(slave),
+                            "A pseudo-terminal is not limited by the baud rate");
+                }
+            } catch (IOException e) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, "Frames are received unchanged",
+                        e.getMessage());
+            } finally {
+                if (slave >= 0) {
+                    LibC.close(slave);
+                }
+                if (master >= 0) {
+                    LibC.close(master);
                 }
             }
+        }
 
-            public String output() {
-                return getBusNumber() + ": " + name + ", " + description;
+        private static CheckerResult.Check benchmarkLoopback(String port, int baud) {
+            var command = "Serial throughput of " + port + " with TX connected to RX";
+            int fd = -1;
+            try {
+                fd = LibC.open(port, LibC.O_RDWR | LibC.O_NOCTTY | LibC.O_CLOEXEC);
+                LibC.makeRaw(fd, baud, READ_TIMEOUT);
+                try (var channel = FileChannel.open(Paths.get(port), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    return benchmark(command, channel, channel, LibC.baud(fd), null);
+                }
+            } catch (IOException e) {
+                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL, command, "Frames are received unchanged",
+                        e.getMessage());
+            } finally {
+                if (fd >= 0) {
+                    LibC.close(fd);
+                }
             }
         }
-    }
 
-    static class SPIChecker extends BaseChecker {
+        private static CheckerResult.Check benchmark(String command, ByteChannel out, ByteChannel in, int baud, String note)
+                throws IOException {
+            var expected = "Frames are received unchanged, bytes per second close to the baud rate";
+            var options = BenchmarkOptions.fromSystemProperties();
+            int maxSize = FRAME_SIZES.get(FRAME_SIZES.size() - 1);
+            var write = ByteBuffer.allocateDirect(maxSize);
+            var read = ByteBuffer.allocateDirect(maxSize);
+            for (int i = 0; i < maxSize; i++) {
+                write.put(i, (byte) (i * 31 + 7));
+            }
 
-        public static CheckerResult detect() {
-            return new CheckerResult("SPI Detection", List.of(
-                detectConfigSetting("dtparam=spi", "SPI", "dtparam=spi=on"),
-                detectInterfaceFromDeviceTree("spi", "SPI bus controller"),
-                detectSpi()
-            ));
-        }
+            // 8N1: a start bit, 8 data bits and a stop bit per byte
+            double maxBytesPerSecond = baud / 10.0;
+            var output = new StringBuilder("Baud rate: ").append(baud == 0 ? "unknown" : baud)
+                    .append(baud == 0 ? "" : String.format(", at most %.0f bytes/s", maxBytesPerSecond)).append("\n");
+            if (note != null) {
+                output.append(note).append("\n");
+            }
 
-        private static CheckerResult.Check detectSpi() {
-            var result = new StringBuilder();
+            boolean allReceived = true;
+            long durationPerSize = options.duration().toNanos() / FRAME_SIZES.size();
+            long warmupEnd = System.nanoTime() + options.warmup().toNanos();
+            while (System.nanoTime() < warmupEnd && allReceived) {
+                allReceived = transfer(out, in, write, read, FRAME_SIZES.get(0));
+            }
 
-            try {
-                Path pwmPath = Paths.get("/sys/bus/spi/devices");
-                if (Files.exists(pwmPath)) {
-                    try (var stream = Files.walk(pwmPath, 2)) {
-                        stream
-                            .map(f -> f.getFileName() + " ")
-                            .filter(f -> f.startsWith("spi"))
-                            .sorted()
-                            .forEach(result::append);
+            for (int size : FRAME_SIZES) {
+                var latency = new LatencyRecorder();
+                int errors = 0;
+                long start = System.nanoTime();
+                long end = start + durationPerSize;
+                long now = start;
+                while (now < end && errors == 0) {
+                    if (!transfer(out, in, write, read, size)) {
+                        errors++;
                     }
+                    long done = System.nanoTime();
+                    latency.record(done - now);
+                    now = done;
                 }
-            } catch (Exception e) {
-                System.err.printf("Error detecting SPI: %s", e.getMessage());
+                long nanos = now - start;
+                double bytesPerSecond = (latency.count() - errors) * (double) size * 1_000_000_000.0 / nanos;
+                output.append(String.format("%5d byte frames: %.0f bytes/s", size, bytesPerSecond));
+                if (baud > 0 && note == null) {
+                    output.append(String.format(" (%.0f%% of the baud rate)", bytesPerSecond * 100 / maxBytesPerSecond));
+                }
+                output.append(", ").append(latency.format());
+                if (errors > 0) {
+                    output.append(", frame lost or corrupted");
+                    allReceived = false;
+                }
+                output.append("\n");
             }
 
-            var command = "ls -l /sys/bus/spi/devices";
-            var expectedOutput = "One or more spiX.Y (X and Y = numbers)";
+            return new CheckerResult.Check(allReceived ? CheckerResult.ResultStatus.PASS : CheckerResult.ResultStatus.FAIL,
+                    command, expected, output.toString());
+        }
 
-            if (result.isEmpty()) {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                    command, expectedOutput, "");
-            } else {
-                return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                    command, expectedOutput, result.toString());
+        /**
+         * Writes a frame and reads it back.
+         *
+         * @return {@code true} if the frame was received unchanged before the read timeout
+         */
+        private static boolean transfer(ByteChannel out, ByteChannel in, ByteBuffer write, ByteBuffer read, int size)
+                throws IOException {
+            write.clear().limit(size);
+            while (write.hasRemaining()) {
+                out.write(write);
+            }
+            read.clear().limit(size);
+            while (read.hasRemaining()) {
+                if (in.read(read) <= 0) {
+                    return false;
+                }
             }
+            return read.flip().equals(write.flip());
         }
     }
 
-    static class SerialChecker extends BaseChecker {
+    public static class SerialChecker extends BaseChecker implements Checker {
+        @Override
+        public String name() {
+            return "serial";
+        }
+
+        @Override
+        public boolean isAffectedBy(Path changed) {
+            return isConfigFile(changed) || isDevice(changed, "tty", "serial");
+        }
+
+        @Override
+        public CheckerResult run(CheckContext context) {
+            return detect();
+        }
 
         public static CheckerResult detect() {
             return new CheckerResult("Serial Detection", List.of(
-                detectConfigSetting("dtparam=uart", "UART", "dtparam=uart0=on"),
+                detectConfigSetting(List.of("enable_uart", "dtparam=uart0"), "UART", "enable_uart=1 or dtparam=uart0=on"),
                 detectInterfaceFromDeviceTree("uart", "UART serial controller"),
                 detectSerialPortAvailability()
             ));
         }
 
         private static CheckerResult.Check detectSerialPortAvailability() {
-            var result = new StringBuilder();
-            String[] serialDevices = {"/dev/ttyS0", "/dev/ttyAMA0", "/dev/ttyUSB0", "/dev/ttyACM0"};
-            var found = false;
-
-            for (String devicePath : serialDevices) {
-                try {
-                    Path device = Paths.get(devicePath);
-                    if (Files.exists(device)) {
-                        // Check if device is readable/writable
-                        boolean readable = Files.isReadable(device);
-                        boolean writable = Files.isWritable(device);
-
-                        result.append(devicePath).append(" exists");
-                        if (readable || writable) {
-                            found = true;
-                            result.append(" (");
-                            if (readable) result.append("readable");
-                            if (readable && writable) result.append(", ");
-                            if (writable) result.append("writable");
-                            result.append(")");
-                        } else {
-                            result.append(" (no permissions)");
-                        }
-                        result.append("\n");
-                    } else {
-                        result.append(devicePath).append(" not available\n");
-                    }
-                } catch (Exception e) {
-                    result.append(devicePath).append(" - error checking: ").append(e.getMessage()).append("\n");
-                }
-            }
+            var ports = SerialPortInventory.read();
 
-            var command = "Checking serial device availability";
-            var expectedOutput = "/dev/ttyS0 exists (readable, writable)";
+            var command = "Serial ports in /sys/class/tty";
+            var expectedOutput = "One or more readable and writable ports, e.g. /dev/ttyAMA0 (uart-pl011) as /dev/serial0";
 
-            if (!found) {
+            if (ports.stream().noneMatch(p -> p.readable() || p.writable())) {
                 return new CheckerResult.Check(CheckerResult.ResultStatus.FAIL,
-                    command, expectedOutput, result.toString());
+                    command, expectedOutput, ports.stream().map(SerialPortInventory.Port::output).collect(Collectors.joining("\n")));
             }
 
             return new CheckerResult.Check(CheckerResult.ResultStatus.PASS,
-                command, expectedOutput, result.toString());
+                command, expectedOutput, ports.stream().map(SerialPortInventory.Port::output).collect(Collectors.joining("\n")));
         }
+
     }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.pi4j.iochecks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the parsers of the command output and the formatting of the results in {@link IOChecker}.
+ *
+ * <p>Each parser is compared with the regular expression based version it replaced, which is kept here as the
+ * baseline. Run with the GC profiler to see the allocation per call ({@code gc.alloc.rate.norm}):</p>
+ *
+ * <pre>java -jar target/benchmarks.jar -prof gc</pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    /**
+     * Output of {@code i2cdetect -y 1} with a sensor, an EEPROM and an address in use by a kernel driver.
+     */
+    static final String I2CDETECT_TABLE = """
+                 0  1  2  3  4  5  6  7  8  9  a  b  c  d  e  f
+            00:                         -- -- -- -- -- -- -- --\s
+            10: -- -- -- -- -- -- -- -- -- -- -- -- 1c -- -- --\s
+            20: -- -- -- -- -- -- -- -- -- -- -- -- -- -- -- --\s
+            30: -- -- -- -- -- -- -- -- -- -- -- -- -- -- -- --\s
+            40: -- -- -- -- -- -- -- -- -- -- -- -- -- -- -- --\s
+            50: 50 -- -- -- -- -- -- -- -- -- -- -- -- -- -- --\s
+            60: -- -- -- -- -- -- -- -- UU -- -- -- -- -- -- --\s
+            70: -- -- -- -- -- -- -- 77                        \s
+            """;
+
+    /**
+     * Output of {@code i2cdetect -l} on a Raspberry Pi 5.
+     */
+    static final String I2CDETECT_LIST = """
+            i2c-1\ti2c       \t1f00074000.i2c                  \tI2C adapter
+            i2c-11\ti2c       \t107d508200.i2c                  \tI2C adapter
+            i2c-12\ti2c       \t107d508280.i2c                  \tI2C adapter
+            i2c-13\ti2c       \t1f00088000.i2c                  \tI2C adapter
+            i2c-14\ti2c       \t1f0008c000.i2c                  \tI2C adapter
+            """;
+
+    /**
+     * Lines of {@code pinctrl} on a Raspberry Pi 5, with two PWM channels on GPIO 12 and 13.
+     */
+    static final String[] PINCTRL = """
+             0: ip    pu | hi // ID_SDA/GPIO0 = input
+             1: ip    pu | hi // ID_SCL/GPIO1 = input
+             2: a3    pu | hi // GPIO2 = SDA1
+             3: a3    pu | hi // GPIO3 = SCL1
+             4: no    pu | -- // GPIO4 = none
+             5: no    pu | -- // GPIO5 = none
+             6: no    pu | -- // GPIO6 = none
+             7: no    pu | -- // GPIO7 = none
+             8: no    pu | -- // GPIO8 = none
+             9: no    pd | -- // GPIO9 = none
+            10: no    pd | -- // GPIO10 = none
+            11: no    pd | -- // GPIO11 = none
+            12: a0    pd | lo // GPIO12 = PWM0_CHAN0
+            13: a0    pd | lo // GPIO13 = PWM0_CHAN1
+            14: a4    pn | hi // GPIO14 = TXD0
+            15: a4    pu | hi // GPIO15 = RXD0
+            16: no    pd | -- // GPIO16 = none
+            17: no    pd | -- // GPIO17 = none
+            18: no    pd | -- // GPIO18 = none
+            19: no    pd | -- // GPIO19 = none
+            20: no    pd | -- // GPIO20 = none
+            21: no    pd | -- // GPIO21 = none
+            22: no    pd | -- // GPIO22 = none
+            23: no    pd | -- // GPIO23 = none
+            24: no    pd | -- // GPIO24 = none
+            25: no    pd | -- // GPIO25 = none
+            26: no    pd | -- // GPIO26 = none
+            27: no    pd | -- // GPIO27 = none
+            28: ip    pd | lo // PCIE_RP1_WAKE/GPIO28 = input
+            29: no    pu | hi // FAN_TACH/GPIO29 = none
+            30: no    pu | -- // HOST_SDA/GPIO30 = none
+            31: no    pu | -- // HOST_SCL/GPIO31 = none
+            32: op dh pd | hi // ETH_RST_N/GPIO32 = output
+            33: no    pd | lo // GPIO33 = none
+            34: op dl pd | lo // CD0_IO0_MICCLK/GPIO34 = output
+            35: no    pd | lo // CD0_IO0_MICDAT0/GPIO35 = none
+            36: no    pd | lo // RP1_PCIE_CLKREQ_N/GPIO36 = none
+            37: no    pd | lo // GPIO37 = none
+            38: ip    pd | hi // CD0_SDA/GPIO38 = input
+            39: ip    pd | hi // CD0_SCL/GPIO39 = input
+            40: ip    pd | hi // CD1_SDA/GPIO40 = input
+            41: ip    pd | hi // CD1_SCL/GPIO41 = input
+            42: a2    pd | hi // USB_VBUS_EN/GPIO42 = VBUS_EN1
+            43: a2    pu | hi // USB_OC_N/GPIO43 = VBUS_OC1
+            44: op dh pd | hi // RP1_STAT_LED/GPIO44 = output
+            45: ip    pd | lo // FAN_PWM/GPIO45 = input
+            46: op dl pd | lo // CD1_IO0_MICCLK/GPIO46 = output
+            47: no    pd | lo // 2712_WAKE/GPIO47 = none
+            48: no    pd | lo // CD1_IO1_MICDAT1/GPIO48 = none
+            49: op dh pd | hi // EN_MAX_USB_CUR/GPIO49 = output
+            50: no    pd | -- // GPIO50 = none
+            51: no    pd | -- // GPIO51 = none
+            52: no    pu | -- // GPIO52 = none
+            53: no    pu | hi // GPIO53 = none
+            """.split("\n");
+
+    static final IOChecker.CheckerResult RESULT = new IOChecker.CheckerResult("I2C Detection", List.of(
+            new IOChecker.CheckerResult.Check(IOChecker.CheckerResult.ResultStatus.PASS, "i2cdetect -l",
+                    "One or more devices, e.g. 'i2c-1'", I2CDETECT_LIST),
+            new IOChecker.CheckerResult.Check(IOChecker.CheckerResult.ResultStatus.PASS, "i2cdetect -y 1",
+                    "One or more I2C used addresses detected on bus 1", I2CDETECT_TABLE),
+            new IOChecker.CheckerResult.Check(IOChecker.CheckerResult.ResultStatus.FAIL, "", "", "")));
+
+    @Benchmark
+    public Object i2cdetectTable() {
+        return IOChecker.I2CChecker.parseI2CDeviceAddresses(I2CDETECT_TABLE);
+    }
+
+    @Benchmark
+    public Object i2cdetectTableRegex() {
+        List<Byte> addresses = new ArrayList<>();
+        for (String line : I2CDETECT_TABLE.split("\n")) {
+            line = line.trim();
+            if (line.startsWith("00: ") || line.startsWith("10: ") ||
+                line.startsWith("20: ") || line.startsWith("30: ") || line.startsWith("40: ") ||
+                line.startsWith("50: ") || line.startsWith("60: ") || line.startsWith("70: ")) {
+                for (String part : line.substring(3).split("\\s+")) {
+                    if (part.trim().matches("[0-9a-fA-F]{2}")) {
+                        addresses.add((byte) Integer.parseInt(part.trim().toLowerCase(), 16));
+                    }
+                }
+            }
+        }
+        return addresses;
+    }
+
+    @Benchmark
+    public Object i2cdetectList() {
+        return IOChecker.I2CChecker.parseI2CDetectOutput(I2CDETECT_LIST);
+    }
+
+    @Benchmark
+    public Object i2cdetectListRegex() {
+        List<IOChecker.I2CChecker.I2CDevice> devices = new ArrayList<>();
+        for (String line : I2CDETECT_LIST.split("\n")) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            if (parts.length >= 4) {
+                devices.add(new IOChecker.I2CChecker.I2CDevice(parts[0], parts[1], parts[2],
+                        String.join(" ", Arrays.copyOfRange(parts, 3, parts.length))));
+            }
+        }
+        return devices;
+    }
+
+    @Benchmark
+    public int pinctrl() {
+        int count = 0;
+        for (String line : PINCTRL) {
+            if (IOChecker.PWMChecker.isPwmFunction(line)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int pinctrlContains() {
+        int count = 0;
+        for (String line : PINCTRL) {
+            if (line.contains("PWM")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public String logOutput() {
+        return RESULT.logOutput();
+    }
+}
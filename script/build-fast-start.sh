@@ -0,0 +1,97 @@
+#!/bin/bash
+
+# Builds a fast-start launcher for a JBang script, e.g. IOChecker.java or GenerateWallpaperInfoImage.java.
+#
+# With JBang, every run first resolves the dependencies and checks the compilation cache, and then the JVM
+# loads and verifies all classes of the script, Pi4J and AWT, before the script does anything. On a Pi Zero 2
+# this takes several seconds. This script:
+#   1. Exports the script and its dependencies to a jar, which is started with plain java, without JBang
+#   2. Does a training run, which stores the loaded and linked classes in a cache:
+#      - Java 25 or newer: an AOT cache (-XX:AOTCacheOutput)
+#      - Older versions: a dynamic AppCDS archive (-XX:ArchiveClassesAtExit)
+#   3. Writes a launcher to ~/.local/bin/<name> that starts the jar with this cache
+#   4. Measures the start with JBang and with the launcher
+#
+# Run this script again after an update of the Java script or of Java, as the cache is only used by the
+# same JVM with the same jars.
+#
+# Usage: build-fast-start.sh <script> <name> [arguments for the training run]
+# Example: build-fast-start.sh GenerateWallpaperInfoImage.java pi4j-wallpaper
+
+if [ $# -lt 2 ]; then
+  echo "Usage: $0 <script> <name> [arguments for the training run]"
+  exit 1
+fi
+
+SCRIPT=$1
+NAME=$2
+shift 2
+
+JBANG=$(command -v jbang || echo ~/.sdkman/candidates/jbang/current/bin/jbang)
+INSTALL_DIR=~/.local/share/pi4j-os/$NAME
+LAUNCHER=~/.local/bin/$NAME
+
+# Milliseconds since the epoch
+now() {
+  echo $(( $(date +%s%N) / 1000000 ))
+}
+
+echo "STEP: Export $SCRIPT with its dependencies to $INSTALL_DIR"
+echo "   "
+mkdir -p "$INSTALL_DIR" ~/.local/bin
+rm -rf "$INSTALL_DIR/lib"
+"$JBANG" export portable --force -O "$INSTALL_DIR/$NAME.jar" "$SCRIPT" || exit 1
+
+# Use the JDK that JBang selected for the //JAVA version of the script, e.g. 22+ for the FFM API, as the java
+# on the PATH can be older. The export above has installed it if needed.
+JDK_PATH=$("$JBANG" info tools "$SCRIPT" 2>/dev/null | sed -n 's/.*"availableJdkPath" *: *"\([^"]*\)".*/\1/p')
+if [ -n "$JDK_PATH" ] && [ -x "$JDK_PATH/bin/java" ]; then
+  JAVA=$(readlink -f "$JDK_PATH/bin/java")
+else
+  JAVA=$(readlink -f "$(command -v java)")
+fi
+JAVA_VERSION=$("$JAVA" -XshowSettings:properties -version 2>&1 | awk -F' = ' '/java.specification.version/ {print $2}')
+
+echo "   "
+echo "STEP: Training run with Java $JAVA_VERSION"
+echo "   "
+if [ "$JAVA_VERSION" -ge 25 ]; then
+  CACHE="$INSTALL_DIR/$NAME.aot"
+  CREATE_OPTION="-XX:AOTCacheOutput=$CACHE"
+  USE_OPTION="-XX:AOTCache=$CACHE"
+else
+  CACHE="$INSTALL_DIR/$NAME.jsa"
+  CREATE_OPTION="-XX:ArchiveClassesAtExit=$CACHE"
+  USE_OPTION="-XX:SharedArchiveFile=$CACHE"
+fi
+rm -f "$CACHE"
+if ! "$JAVA" "$CREATE_OPTION" --enable-native-access=ALL-UNNAMED -jar "$INSTALL_DIR/$NAME.jar" "$@" > /dev/null; then
+  echo "The training run with $JAVA failed, no launcher is installed"
+  exit 1
+fi
+if [ ! -f "$CACHE" ]; then
+  echo "No cache was created, the launcher will start without it"
+  USE_OPTION=""
+fi
+
+cat > "$LAUNCHER" << EOF
+#!/bin/bash
+# Generated by build-fast-start.sh for $SCRIPT
+exec "$JAVA" $USE_OPTION --enable-native-access=ALL-UNNAMED -jar "$INSTALL_DIR/$NAME.jar" "\$@"
+EOF
+chmod +x "$LAUNCHER"
+
+echo "   "
+echo "STEP: Measure the start"
+echo "   "
+START=$(now)
+"$JBANG" "$SCRIPT" "$@" > /dev/null 2>&1
+JBANG_DURATION=$(( $(now) - START ))
+START=$(now)
+"$LAUNCHER" "$@" > /dev/null 2>&1
+LAUNCHER_DURATION=$(( $(now) - START ))
+echo "With JBang:    $JBANG_DURATION ms"
+echo "With launcher: $LAUNCHER_DURATION ms"
+
+echo "   "
+echo "Installed $LAUNCHER"
@@ -0,0 +1,11 @@
+#!/bin/bash
+
+echo "Installing IO checker"
+
+mkdir -p ~/iochecks
+cd ~/iochecks
+wget -O build-fast-start.sh https://raw.githubusercontent.com/Pi4J/pi4j-os/main/script/build-fast-start.sh
+# The training run checks everything, so the cache contains the classes of all checks
+bash build-fast-start.sh https://github.com/pi4j/pi4j-os/blob/main/iochecks/IOChecker.java pi4j-iochecker --fresh
+
+echo "IO checker is ready, run it with: ~/.local/bin/pi4j-iochecker"
@@ -12,4 +12,25 @@ sudo chmod +x /etc/NetworkManager/dispatcher.d/99-ip-change-notify
 sudo chown root:root /etc/NetworkManager/dispatcher.d/99-ip-change-notify
 jbang GenerateWallpaperInfoImage.java
 
+# Launcher with an AOT cache, used by the dispatcher script instead of JBang to start faster
+wget -O build-fast-start.sh https://raw.githubusercontent.com/Pi4J/pi4j-os/main/script/build-fast-start.sh
+bash build-fast-start.sh GenerateWallpaperInfoImage.java pi4j-wallpaper
+
+# Daemon that keeps running in the desktop session and updates the wallpaper on events of the dispatcher script
+# On boards with less than 1 GB, e.g. a Pi Zero 2 W, the wallpaper is drawn and encoded in strips
+DAEMON_OPTIONS="--daemon"
+if [ "$(awk '/MemTotal/ {print $2}' /proc/meminfo)" -lt 1048576 ]; then
+  DAEMON_OPTIONS="--daemon --low-memory"
+fi
+mkdir -p ~/.config/autostart
+cat > ~/.config/autostart/pi4j-wallpaper.desktop << EOF
+[Desktop Entry]
+Type=Application
+Name=Pi4J Wallpaper
+Comment=Updates the wallpaper with system information on network changes
+Path=$HOME/wallpaper
+Exec=$HOME/.local/bin/pi4j-wallpaper $DAEMON_OPTIONS
+EOF
+nohup ~/.local/bin/pi4j-wallpaper $DAEMON_OPTIONS > /dev/null 2>&1 &
+
 echo "Wallpaper script is ready"
@@ -1,27 +1,72 @@
 ///usr/bin/env jbang "$0" "$@" ; exit $?
 
 //DEPS com.pi4j:pi4j-core:3.0.3
+//JAVA 22+
+//RUNTIME_OPTIONS --enable-native-access=ALL-UNNAMED
 
 import com.pi4j.Pi4J;
 import com.sun.management.OperatingSystemMXBean;
 import java.lang.management.ManagementFactory;
 import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import javax.imageio.ImageIO;
 
 /**
@@ -35,103 +80,1283 @@ import javax.imageio.ImageIO;
  * Example usage to generate a wallpaper for a 1280x800 screen:
  * cd wallpaper
  * jbang GenerateWallpaperInfoImage.java
+ *
+ * With the argument --daemon, the script keeps running and updates the wallpaper when it receives a message on a
+ * Unix-domain socket, see {@link WallpaperDaemon}. This is used by the NetworkManager dispatcher script, so a network
+ * event doesn't start a new JVM.
+ *
+ * Before rendering, the script waits until the IP addresses are settled, see {@link AddressWatcher}. This can be
+ * tuned with --debounce=[ms], the time without address changes, and --timeout=[ms], the maximum time to wait.
+ *
+ * The wallpaper is written with {@link PngEncoder}, which can be tuned with --png-level=[0-9],
+ * --png-filter=[none|sub|up|average|paeth|adaptive] and --png-threads=[n].
+ *
+ * On boards with 512 MB, use --low-memory to draw and encode the image in strips, see {@link WallpaperRenderer}.
+ * With --memory-check=[MB], the script checks that this mode allocates less than the given size, see {@link MemoryCheck}.
+ *
+ * The information is collected by {@link InfoProvider}s, which run concurrently with a deadline each, so a slow
+ * hostname lookup shows a placeholder instead of delaying the wallpaper. More providers can be added as a service.
  */
 public class GenerateWallpaperInfoImage {
 
-    public static void main(String[] args) {
-        var width = 500;
-        var height = 300;
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 300;
+    private static final String INPUT_IMAGE = "pi4j-logo.png";
+    private static final String OUTPUT_IMAGE = "wallpaper.png";
+
+    public static void main(String[] args) throws IOException {
+        var daemon = false;
+        var lowMemory = false;
+        var memoryCheckCeiling = 0;
+        var benchmarkFrames = 0;
+        var pngBenchmarkIterations = 0;
+        var encoder = PngEncoder.fromArgs(args);
+        var debounce = Duration.ofMillis(500);
+        var timeout = Duration.ofSeconds(10);
+        for (String arg : args) {
+            if (arg.equals("--daemon")) {
+                daemon = true;
+            } else if (arg.equals("--low-memory")) {
+                lowMemory = true;
+            } else if (arg.equals("--memory-check")) {
+                memoryCheckCeiling = 4;
+            } else if (arg.startsWith("--memory-check=")) {
+                memoryCheckCeiling = Integer.parseInt(arg.substring("--memory-check=".length()));
+            } else if (arg.equals("--benchmark")) {
+                benchmarkFrames = 1000;
+            } else if (arg.startsWith("--benchmark=")) {
+                benchmarkFrames = Integer.parseInt(arg.substring("--benchmark=".length()));
+            } else if (arg.equals("--png-benchmark")) {
+                pngBenchmarkIterations = 10;
+            } else if (arg.startsWith("--png-benchmark=")) {
+                pngBenchmarkIterations = Integer.parseInt(arg.substring("--png-benchmark=".length()));
+            } else if (arg.startsWith("--debounce=")) {
+                debounce = Duration.ofMillis(Long.parseLong(arg.substring("--debounce=".length())));
+            } else if (arg.startsWith("--timeout=")) {
+                timeout = Duration.ofMillis(Long.parseLong(arg.substring("--timeout=".length())));
+            }
+        }
+
+        if (benchmarkFrames > 0) {
+            new RendererBenchmark(INPUT_IMAGE, WIDTH, HEIGHT, encoder).run(benchmarkFrames);
+            return;
+        }
 
-        var outputFile = generateSystemInfoImage("pi4j-logo.png", "wallpaper.png", width, height);
+        if (pngBenchmarkIterations > 0) {
+            new PngBenchmark(List.of(INPUT_IMAGE, "wallpaper-1-1920x1080.png", "wallpaper-2-1920x1080.png"))
+                    .run(pngBenchmarkIterations);
+            return;
+        }
+
+        if (memoryCheckCeiling > 0) {
+            var passed = new MemoryCheck(INPUT_IMAGE, 1920, 1080, encoder).run(memoryCheckCeiling);
+            System.exit(passed ? 0 : 1);
+        }
+
+        if (daemon) {
+            new WallpaperDaemon(WallpaperDaemon.socketPath(), debounce, timeout, encoder, lowMemory).run();
+            return;
+        }
+
+        awaitNetworkSettled(debounce, timeout);
+
+        var outputFile = generateSystemInfoImage(INPUT_IMAGE, OUTPUT_IMAGE, WIDTH, HEIGHT, encoder, lowMemory);
 
         if (outputFile == null) {
             System.err.println("No output image could be created...");
         } else {
             System.out.println("Image generated successfully");
+            if (lowMemory) {
+                System.out.println("Memory: " + MemoryCheck.usage());
+            }
+            setWallpaper(outputFile);
+        }
+    }
 
-            // Update the wallpaper on the screen
-            try {
-                int exitCode = executeWithExitCode(Arrays.asList("pcmanfm",
-                        "--set-wallpaper", outputFile.getCanonicalPath(),
-                        "--wallpaper-mode", "center"));
+    public static File generateSystemInfoImage(String inputImagePath, String outputImagePath, int width, int height,
+                                               PngEncoder encoder, boolean lowMemory) {
+        try {
+            var info = new InfoCollector(InfoProvider.discover()).collect();
+            info.of("network").forEach(System.out::println);
+
+            return new WallpaperRenderer(inputImagePath, width, height, encoder, lowMemory).render(info.all(), outputImagePath);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Update the wallpaper on the screen
+     */
+    private static void setWallpaper(File outputFile) {
+        try {
+            int exitCode = executeWithExitCode(Arrays.asList("pcmanfm",
+                    "--set-wallpaper", outputFile.getCanonicalPath(),
+                    "--wallpaper-mode", "center"));
+
+            if (exitCode == 0) {
+                System.out.println("Wallpaper is updated");
+            } else {
+                System.err.println("Failed to update wallpaper (exit code: " + exitCode + ")");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to update wallpaper: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Draws the info next to the logo. The background and the scaled logo are composited once into a base layer, and
+     * each info line is laid out once into a {@link GlyphVector}. When the info changes, only the rows with another
+     * text are restored from the base layer and drawn again, e.g. only the row of an IP address.
+     *
+     * <p>In low-memory mode, for boards with 512 MB, there is no base layer or image of the full size. Only the logo
+     * on its background is kept, and the image is drawn and encoded in strips of {@link #STRIP_HEIGHT} rows by
+     * {@link PngEncoder#write(int, int, int, PngEncoder.Strips, Path)}.</p>
+     */
+    static class WallpaperRenderer {
+        static final int STRIP_HEIGHT = 32;
+
+        // Info box
+        private static final int LOGO_SIZE = 170;
+        private static final int PADDING = 10;
+        private static final int LINE_HEIGHT = 14;
+        private static final int INFO_WIDTH = 300;
+
+        private static final Color BACKGROUND = new Color(100, 150, 150, 180);
+        private static final Color TEXT = new Color(255, 255, 255);
+
+        private final int width;
+        private final int height;
+        private final BufferedImage logo;
+        private final BufferedImage base;
+        private final BufferedImage image;
+        private final PngEncoder encoder;
+        private final Font font = new Font("Arial", Font.PLAIN, 12);
+        private final FontRenderContext fontRenderContext = new FontRenderContext(null,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON, RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT);
+        private final int descent;
+        private final List<String> lines = new ArrayList<>();
+        private final List<GlyphVector> glyphs = new ArrayList<>();
+
+        WallpaperRenderer(String inputImagePath, int width, int height, PngEncoder encoder) throws IOException {
+            this(inputImagePath, width, height, encoder, false);
+        }
+
+        WallpaperRenderer(String inputImagePath, int width, int height, PngEncoder encoder, boolean lowMemory)
+                throws IOException {
+            this.width = width;
+            this.height = height;
+            this.encoder = encoder;
+            var input = ImageIO.read(new File(inputImagePath));
+
+            if (lowMemory) {
+                // Only the scaled logo, on the semi-transparent background
+                this.logo = new BufferedImage(LOGO_SIZE, LOGO_SIZE, BufferedImage.TYPE_INT_ARGB);
+                drawBackground(logo, input, -PADDING, -PADDING);
+                this.base = null;
+                this.image = null;
+            } else {
+                // Semi-transparent background with the scaled logo
+                this.logo = null;
+                this.base = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                drawBackground(base, input, 0, 0);
+                this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                image.setData(base.getRaster());
+            }
+            this.descent = (int) Math.ceil(font.getLineMetrics("Ag", fontRenderContext).getDescent());
+        }
+
+        private static void drawBackground(BufferedImage target, BufferedImage input, int x, int y) {
+            Graphics2D g2d = target.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(BACKGROUND);
+            g2d.fillRect(0, 0, target.getWidth(), target.getHeight());
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.drawImage(input, x + PADDING, y + PADDING, LOGO_SIZE, LOGO_SIZE, null);
+            g2d.dispose();
+        }
+
+        File render(List<String> infoItems, String outputImagePath) throws IOException {
+            var outputFile = new File(outputImagePath);
+            if (image == null) {
+                // The full image is drawn again, so rows of lines that are gone can be removed right away
+                layout(infoItems);
+                removeLines(infoItems.size());
+                encoder.write(width, height, STRIP_HEIGHT, this::drawStrip, outputFile.toPath());
+            } else {
+                draw(infoItems);
+                encoder.write(image, outputFile.toPath());
+            }
+            return outputFile;
+        }
+
+        /**
+         * Draws the rows of which the text changed since the previous call.
+         *
+         * @return the number of rows that were drawn again
+         */
+        int draw(List<String> infoItems) {
+            var dirty = layout(infoItems);
+            int rows = dirty.length;
+            int dirtyCount = 0;
+            for (boolean row : dirty) {
+                dirtyCount += row ? 1 : 0;
+            }
+            if (dirtyCount == 0) {
+                return 0;
+            }
+
+            Graphics2D g2d = image.createGraphics();
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setColor(TEXT);
+            for (int i = 0; i < rows; i++) {
+                if (dirty[i]) {
+                    drawRow(g2d, i);
+                }
+            }
+            g2d.dispose();
 
-                if (exitCode == 0) {
-                    System.out.println("Wallpaper is updated");
+            // Rows of lines that are gone are empty now
+            removeLines(infoItems.size());
+            return dirtyCount;
+        }
+
+        private void removeLines(int size) {
+            while (lines.size() > size) {
+                lines.removeLast();
+                glyphs.removeLast();
+            }
+        }
+
+        /**
+         * Lays out the lines of which the text changed since the previous call. Lines that are gone get no text, and
+         * are only removed by the caller, after their rows are drawn again.
+         *
+         * @return per row if it changed
+         */
+        private boolean[] layout(List<String> infoItems) {
+            int rows = Math.max(lines.size(), infoItems.size());
+            var dirty = new boolean[rows];
+            for (int i = 0; i < rows; i++) {
+                var text = i < infoItems.size() ? infoItems.get(i) : null;
+                if (i < lines.size() && Objects.equals(lines.get(i), text)) {
+                    continue;
+                }
+                var glyphVector = text == null ? null : font.createGlyphVector(fontRenderContext, text);
+                if (i < lines.size()) {
+                    lines.set(i, text);
+                    glyphs.set(i, glyphVector);
                 } else {
-                    System.err.println("Failed to update wallpaper (exit code: " + exitCode + ")");
+                    lines.add(text);
+                    glyphs.add(glyphVector);
+                }
+                dirty[i] = true;
+            }
+            return dirty;
+        }
+
+        /**
+         * Draws the rows from y of the full image into the strip, in low-memory mode.
+         */
+        private void drawStrip(BufferedImage strip, int y) {
+            Graphics2D g2d = strip.createGraphics();
+            g2d.translate(0, -y);
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(BACKGROUND);
+            g2d.fillRect(0, y, width, strip.getHeight());
+            g2d.drawImage(logo, PADDING, PADDING, null);
+            g2d.setComposite(AlphaComposite.SrcOver);
+
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setColor(TEXT);
+            for (int i = 0; i < glyphs.size(); i++) {
+                int baseline = baseline(i);
+                if (baseline + LINE_HEIGHT > y && baseline - LINE_HEIGHT < y + strip.getHeight()) {
+                    g2d.drawGlyphVector(glyphs.get(i), width - INFO_WIDTH + PADDING, baseline);
+                }
+            }
+            g2d.dispose();
+        }
+
+        /**
+         * Restores the row from the base layer, and draws its text. Glyphs can be a bit higher or lower than the
+         * row, so the text of the rows above and below is drawn too, clipped to this row.
+         */
+        private void drawRow(Graphics2D g2d, int row) {
+            int x = image.getWidth() - INFO_WIDTH;
+            int y = baseline(row) - LINE_HEIGHT + descent;
+            g2d.setClip(x, y, INFO_WIDTH, LINE_HEIGHT);
+
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.drawImage(base, x, y, x + INFO_WIDTH, y + LINE_HEIGHT, x, y, x + INFO_WIDTH, y + LINE_HEIGHT, null);
+            g2d.setComposite(AlphaComposite.SrcOver);
+
+            for (int i = Math.max(0, row - 1); i <= row + 1 && i < glyphs.size(); i++) {
+                if (glyphs.get(i) != null) {
+                    g2d.drawGlyphVector(glyphs.get(i), x + PADDING, baseline(i));
+                }
+            }
+        }
+
+        private static int baseline(int row) {
+            return PADDING + LINE_HEIGHT * (row + 1);
+        }
+
+        BufferedImage image() {
+            return image;
+        }
+    }
+
+    /**
+     * Writes an image as PNG, faster than {@link ImageIO}, which compresses the image on one thread with fixed
+     * settings.
+     *
+     * <p>The rows are filtered and compressed in blocks, in parallel, like pigz. Each block is compressed with the end
+     * of the previous block as dictionary and ends with a sync flush, so the blocks together are one zlib stream and
+     * the result is a normal PNG. The compression level, the filter of the rows and the number of threads can be
+     * chosen with --png-level=[0-9], --png-filter=[none|sub|up|average|paeth|adaptive] and --png-threads=[n].</p>
+     *
+     * <p>The file is written to a temporary file next to it, which then replaces the file with an atomic rename, so
+     * pcmanfm never reads a half-written wallpaper.</p>
+     */
+    static class PngEncoder {
+        private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+        private static final int BLOCK_SIZE = 128 * 1024;
+        private static final int DICTIONARY_SIZE = 32 * 1024;
+
+        enum Filter {
+            NONE, SUB, UP, AVERAGE, PAETH,
+            /**
+             * Per row the filter with the smallest sum of the absolute differences, as recommended by the PNG
+             * specification.
+             */
+            ADAPTIVE
+        }
+
+        private final int level;
+        private final Filter filter;
+        private final int threads;
+
+        PngEncoder(int level, Filter filter, int threads) {
+            if (level < 0 || level > 9) {
+                throw new IllegalArgumentException("PNG level must be 0 to 9: " + level);
+            }
+            this.level = level;
+            this.filter = filter;
+            this.threads = Math.max(1, threads);
+        }
+
+        /**
+         * @return the encoder configured with the --png-* arguments, defaulting to level 4, the SUB filter and a
+         * thread per core
+         */
+        static PngEncoder fromArgs(String[] args) {
+            var level = 4;
+            var filter = Filter.SUB;
+            var threads = Runtime.getRuntime().availableProcessors();
+            for (String arg : args) {
+                if (arg.startsWith("--png-level=")) {
+                    level = Integer.parseInt(arg.substring("--png-level=".length()));
+                } else if (arg.startsWith("--png-filter=")) {
+                    filter = Filter.valueOf(arg.substring("--png-filter=".length()).toUpperCase());
+                } else if (arg.startsWith("--png-threads=")) {
+                    threads = Integer.parseInt(arg.substring("--png-threads=".length()));
+                }
+            }
+            return new PngEncoder(level, filter, threads);
+        }
+
+        @Override
+        public String toString() {
+            return "level " + level + ", " + filter.name().toLowerCase() + ", " + threads + " thread(s)";
+        }
+
+        /**
+         * Draws rows of the image into a strip, starting from the given row of the image.
+         */
+        interface Strips {
+            void draw(BufferedImage strip, int y);
+        }
+
+        private interface ChannelWriter {
+            void write(WritableByteChannel channel) throws IOException;
+        }
+
+        void write(BufferedImage image, Path path) throws IOException {
+            writeAtomically(path, channel -> write(image, channel));
+        }
+
+        /**
+         * Writes an image with alpha that is drawn in strips, for the low-memory mode. Only one strip and one row are
+         * kept in memory, and the rows are compressed as one stream on the calling thread.
+         */
+        void write(int width, int height, int stripHeight, Strips strips, Path path) throws IOException {
+            writeAtomically(path, channel -> write(width, height, stripHeight, strips, channel));
+        }
+
+        private static void writeAtomically(Path path, ChannelWriter writer) throws IOException {
+            var temp = path.resolveSibling("." + path.getFileName() + ".tmp");
+            try (var channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        void write(BufferedImage image, WritableByteChannel channel) throws IOException {
+            int width = image.getWidth();
+            int height = image.getHeight();
+            boolean alpha = image.getColorModel().hasAlpha();
+            int bytesPerPixel = alpha ? 4 : 3;
+            int rowSize = 1 + width * bytesPerPixel;
+            int rowsPerBlock = threads == 1 ? height : Math.max(1, BLOCK_SIZE / rowSize);
+            int blocks = (height + rowsPerBlock - 1) / rowsPerBlock;
+
+            // Filter all blocks, and then compress them, as each block needs the end of the previous one
+            byte[][] filtered = new byte[blocks][];
+            byte[][] compressed = new byte[blocks][];
+            runBlocks(blocks, block -> filtered[block] = filter(image, block * rowsPerBlock,
+                    Math.min(height, (block + 1) * rowsPerBlock), bytesPerPixel));
+            runBlocks(blocks, block -> compressed[block] = deflate(filtered, block));
+            var adler = new Adler32();
+            for (byte[] data : filtered) {
+                adler.update(data);
+            }
+
+            var checksum = ByteBuffer.allocate(4).putInt((int) adler.getValue()).array();
+            writeHeader(channel, width, height, alpha);
+            for (int block = 0; block < blocks; block++) {
+                writeChunk(channel, "IDAT", block == 0 ? zlibHeader() : new byte[0], compressed[block],
+                        block == blocks - 1 ? checksum : new byte[0]);
+            }
+            writeChunk(channel, "IEND");
+        }
+
+        private void write(int width, int height, int stripHeight, Strips strips, WritableByteChannel channel)
+                throws IOException {
+            var strip = new BufferedImage(width, Math.min(stripHeight, height), BufferedImage.TYPE_INT_ARGB);
+            int rowSize = width * 4;
+            var pixels = new int[width];
+            var previous = new byte[rowSize];
+            var current = new byte[rowSize];
+            var filtered = new byte[rowSize + 1];
+            var candidate = filter == Filter.ADAPTIVE ? new byte[rowSize] : null;
+            var buffer = new byte[64 * 1024];
+            int length = 0;
+
+            writeHeader(channel, width, height, true);
+            var deflater = new Deflater(level);
+            try {
+                for (int y = 0; y < height; y += strip.getHeight()) {
+                    strips.draw(strip, y);
+                    for (int row = 0; row < strip.getHeight() && y + row < height; row++) {
+                        readRow(strip, row, pixels, current, 4);
+                        filterRow(current, previous, 4, candidate, filtered, 0);
+                        deflater.setInput(filtered);
+                        while (!deflater.needsInput()) {
+                            length += deflater.deflate(buffer, length, buffer.length - length);
+                            if (length == buffer.length) {
+                                writeChunk(channel, "IDAT", buffer);
+                                length = 0;
+                            }
+                        }
+                        var swap = previous;
+                        previous = current;
+                        current = swap;
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    length += deflater.deflate(buffer, length, buffer.length - length);
+                    if (length == buffer.length || deflater.finished()) {
+                        writeChunk(channel, "IDAT", length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                        length = 0;
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+            writeChunk(channel, "IEND");
+        }
+
+        private static void writeHeader(WritableByteChannel channel, int width, int height, boolean alpha)
+                throws IOException {
+            var header = ByteBuffer.allocate(13)
+                    .putInt(width).putInt(height)
+                    .put((byte) 8)                      // Bit depth
+                    .put((byte) (alpha ? 6 : 2))        // Color type RGBA or RGB
+                    .put((byte) 0).put((byte) 0).put((byte) 0)
+                    .array();
+            write(channel, ByteBuffer.wrap(SIGNATURE));
+            writeChunk(channel, "IHDR", header);
+        }
+
+        private void runBlocks(int blocks, java.util.function.IntConsumer task) throws IOException {
+            if (threads == 1 || blocks == 1) {
+                for (int block = 0; block < blocks; block++) {
+                    task.accept(block);
+                }
+                return;
+            }
+            try (var pool = Executors.newFixedThreadPool(Math.min(threads, blocks))) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int block = 0; block < blocks; block++) {
+                    int index = block;
+                    futures.add(pool.submit(() -> task.accept(index)));
+                }
+                for (var future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while encoding the PNG", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to encode the PNG", e.getCause());
+            }
+        }
+
+        /**
+         * @return the filtered rows from start until end, each starting with the filter type
+         */
+        private byte[] filter(BufferedImage image, int start, int end, int bytesPerPixel) {
+            int width = image.getWidth();
+            int rowSize = width * bytesPerPixel;
+            var out = new byte[(end - start) * (rowSize + 1)];
+            var pixels = new int[width];
+            var previous = new byte[rowSize];
+            var current = new byte[rowSize];
+            var candidate = filter == Filter.ADAPTIVE ? new byte[rowSize] : null;
+            if (start > 0) {
+                readRow(image, start - 1, pixels, previous, bytesPerPixel);
+            }
+            for (int y = start, offset = 0; y < end; y++, offset += rowSize + 1) {
+                readRow(image, y, pixels, current, bytesPerPixel);
+                filterRow(current, previous, bytesPerPixel, candidate, out, offset);
+                var swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return out;
+        }
+
+        /**
+         * Writes the filter type and the filtered row at the offset.
+         */
+        private void filterRow(byte[] row, byte[] previous, int bpp, byte[] candidate, byte[] out, int offset) {
+            if (filter != Filter.ADAPTIVE) {
+                out[offset] = (byte) filter.ordinal();
+                filterRow(filter.ordinal(), row, previous, bpp, out, offset + 1);
+                return;
+            }
+            long best = Long.MAX_VALUE;
+            for (int type = 0; type < Filter.ADAPTIVE.ordinal(); type++) {
+                filterRow(type, row, previous, bpp, candidate, 0);
+                long sum = 0;
+                for (byte b : candidate) {
+                    sum += Math.abs(b);
+                }
+                if (sum < best) {
+                    best = sum;
+                    out[offset] = (byte) type;
+                    System.arraycopy(candidate, 0, out, offset + 1, row.length);
+                }
+            }
+        }
+
+        private static void readRow(BufferedImage image, int y, int[] pixels, byte[] row, int bytesPerPixel) {
+            int type = image.getType();
+            if (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB) {
+                // Copies the pixels without converting each one through the color model
+                image.getRaster().getDataElements(0, y, pixels.length, 1, pixels);
+            } else {
+                image.getRGB(0, y, pixels.length, 1, pixels, 0, pixels.length);
+            }
+            for (int x = 0, i = 0; x < pixels.length; x++) {
+                int pixel = pixels[x];
+                row[i++] = (byte) (pixel >> 16);
+                row[i++] = (byte) (pixel >> 8);
+                row[i++] = (byte) pixel;
+                if (bytesPerPixel == 4) {
+                    row[i++] = (byte) (pixel >>> 24);
+                }
+            }
+        }
+
+        private static void filterRow(int type, byte[] row, byte[] previous, int bpp, byte[] out, int offset) {
+            for (int i = 0; i < row.length; i++) {
+                int a = i >= bpp ? row[i - bpp] & 0xff : 0;
+                int b = previous[i] & 0xff;
+                int c = i >= bpp ? previous[i - bpp] & 0xff : 0;
+                int predictor = switch (type) {
+                    case 1 -> a;
+                    case 2 -> b;
+                    case 3 -> (a + b) >>> 1;
+                    case 4 -> paeth(a, b, c);
+                    default -> 0;
+                };
+                out[offset + i] = (byte) (row[i] - predictor);
+            }
+        }
+
+        private static int paeth(int a, int b, int c) {
+            int p = a + b - c;
+            int pa = Math.abs(p - a);
+            int pb = Math.abs(p - b);
+            int pc = Math.abs(p - c);
+            return pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+        }
+
+        /**
+         * @return the raw deflate data of the block, ending with a sync flush, or with the final block
+         */
+        private byte[] deflate(byte[][] filtered, int block) {
+            var deflater = new Deflater(level, true);
+            try {
+                if (block > 0) {
+                    var previous = filtered[block - 1];
+                    int length = Math.min(DICTIONARY_SIZE, previous.length);
+                    deflater.setDictionary(previous, previous.length - length, length);
+                }
+                var input = filtered[block];
+                deflater.setInput(input);
+                boolean last = block == filtered.length - 1;
+                if (last) {
+                    deflater.finish();
+                }
+                var out = new java.io.ByteArrayOutputStream(input.length / 4 + 64);
+                var buffer = new byte[64 * 1024];
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, length);
+                } while (last ? !deflater.finished() : length == buffer.length);
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        private byte[] zlibHeader() {
+            int compressionLevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+            int header = 0x78 << 8 | compressionLevel << 6;
+            header += (31 - header % 31) % 31;
+            return new byte[]{(byte) (header >> 8), (byte) header};
+        }
+
+        private static void writeChunk(WritableByteChannel channel, String type, byte[]... parts) throws IOException {
+            var crc = new CRC32();
+            var typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+            crc.update(typeBytes);
+            int length = 0;
+            for (byte[] part : parts) {
+                crc.update(part);
+                length += part.length;
+            }
+            write(channel, ByteBuffer.allocate(8).putInt(length).put(typeBytes).flip());
+            for (byte[] part : parts) {
+                write(channel, ByteBuffer.wrap(part));
+            }
+            write(channel, ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip());
+        }
+
+        private static void write(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Compares the encode time and the file size of {@link ImageIO} with the {@link PngEncoder} at each level and
+     * filter, on one thread and on all cores. Start with {@code --png-benchmark[=iterations]}.
+     */
+    static class PngBenchmark {
+        private final List<String> imagePaths;
+
+        PngBenchmark(List<String> imagePaths) {
+            this.imagePaths = imagePaths;
+        }
+
+        void run(int iterations) throws IOException {
+            var output = Files.createTempFile("pi4j-wallpaper-benchmark", ".png");
+            try {
+                int cores = Runtime.getRuntime().availableProcessors();
+                for (String imagePath : imagePaths) {
+                    var image = ImageIO.read(new File(imagePath));
+                    System.out.printf("%s, %dx%d%n", imagePath, image.getWidth(), image.getHeight());
+                    System.out.println(measure("ImageIO", iterations, output,
+                            () -> ImageIO.write(image, "PNG", output.toFile())));
+                    for (int level : new int[]{1, 4, 6, 9}) {
+                        for (var filter : PngEncoder.Filter.values()) {
+                            for (int threads : cores == 1 ? new int[]{1} : new int[]{1, cores}) {
+                                var encoder = new PngEncoder(level, filter, threads);
+                                System.out.println(measure(encoder.toString(), iterations, output,
+                                        () -> encoder.write(image, output)));
+                            }
+                        }
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(output);
+            }
+        }
+
+        interface Encode {
+            void run() throws IOException;
+        }
+
+        private static String measure(String name, int iterations, Path output, Encode encode) throws IOException {
+            // Warmup
+            encode.run();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                encode.run();
+            }
+            long duration = (System.nanoTime() - start) / iterations;
+            return String.format("  %-32s %6d ms %9d bytes", name, duration / 1_000_000, Files.size(output));
+        }
+    }
+
+    /**
+     * Checks the memory use of the low-memory mode, by rendering a full-HD wallpaper in strips and comparing the bytes
+     * allocated by the rendering thread with a ceiling. The normal mode is measured too, for comparison. The process
+     * exits with 1 when the ceiling is exceeded, so it can be used as a regression test: {@code --memory-check[=MB]},
+     * 4 MB by default.
+     *
+     * <p>The allocated bytes are gated, not the peak heap: the heap pools also count garbage in the young generation
+     * until the next collection, so their peak depends on when the GC runs. All allocations are an upper bound of
+     * the heap growth, and the same for each run. The low-memory mode renders and encodes on the calling thread, so
+     * none of its allocations are missed.</p>
+     */
+    static class MemoryCheck {
+        private final String inputImagePath;
+        private final int width;
+        private final int height;
+        private final PngEncoder encoder;
+        private final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        MemoryCheck(String inputImagePath, int width, int height, PngEncoder encoder) {
+            this.inputImagePath = inputImagePath;
+            this.width = width;
+            this.height = height;
+            this.encoder = encoder;
+        }
+
+        boolean run(int ceilingMegabytes) throws IOException {
+            var infoItems = new InfoCollector(InfoProvider.discover()).collect().all();
+            var output = Files.createTempFile("pi4j-wallpaper-memory", ".png");
+            try {
+                // Once before measuring, so the classes and fonts are loaded
+                render(false, infoItems, output);
+                long full = render(false, infoItems, output);
+                long low = render(true, infoItems, output);
+                System.out.printf("Normal mode:     allocated %.1f MB%n", full / 1048576.0);
+                System.out.printf("Low-memory mode: allocated %.1f MB (ceiling %d MB)%n", low / 1048576.0,
+                        ceilingMegabytes);
+                System.out.println("Peak RSS of the process: " + peakRss());
+                if (low > ceilingMegabytes * 1048576L) {
+                    System.err.println("The low-memory mode exceeds the ceiling");
+                    return false;
+                }
+                return true;
+            } finally {
+                Files.deleteIfExists(output);
+            }
+        }
+
+        /**
+         * @return the bytes allocated by the current thread while creating a renderer and rendering once
+         */
+        private long render(boolean lowMemory, List<String> infoItems, Path output) throws IOException {
+            long before = threadBean.getCurrentThreadAllocatedBytes();
+            new WallpaperRenderer(inputImagePath, width, height, encoder, lowMemory)
+                    .render(infoItems, output.toString());
+            return threadBean.getCurrentThreadAllocatedBytes() - before;
+        }
+
+        private static List<java.lang.management.MemoryPoolMXBean> heapPools() {
+            return ManagementFactory.getMemoryPoolMXBeans().stream()
+                    .filter(pool -> pool.getType() == java.lang.management.MemoryType.HEAP)
+                    .toList();
+        }
+
+        /**
+         * @return the peak heap and peak resident set size (VmHWM) of the process
+         */
+        static String usage() {
+            long peakHeap = 0;
+            for (var pool : heapPools()) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+            return String.format("peak heap %.1f MB, peak RSS %s", peakHeap / 1048576.0, peakRss());
+        }
+
+        private static String peakRss() {
+            try {
+                for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                    if (line.startsWith("VmHWM:")) {
+                        return line.substring("VmHWM:".length()).trim();
+                    }
                 }
             } catch (IOException e) {
-                System.err.println("Failed to update wallpaper: " + e.getMessage());
+                // Not on Linux
             }
+            return "unknown";
         }
     }
 
-    public static File generateSystemInfoImage(String inputImagePath, String outputImagePath, int width, int height) {
-        try {
-            // Info box
-            int logoSize = 170;
-            int padding = 10;
-            int lineHeight = 14;
-            int infoWidth = 300;
-            int networkLineHeight = 24;
-
-            List<String> infoItems = new ArrayList<>();
-            infoItems.addAll(getSystemInfo());
-            infoItems.addAll(getNetworkInfo());
-
-            // Read the input image
-            BufferedImage originalImage = ImageIO.read(new File(inputImagePath));
-
-            // Create a copy of the image
-            BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = newImage.createGraphics();
-
-            // Add semi-transparent background
-            g2d.setColor(new Color(100, 150, 150, 180));
-            g2d.fillRect(0, 0, width, height);
+    /**
+     * Compares the time and the memory allocation of one frame of the {@link WallpaperRenderer} with a full redraw of
+     * the image into a new surface, as done before the layered rendering. Each frame changes one IP address, like a DHCP renewal. Writing
+     * the PNG file is the same for both and not included. Start with {@code --benchmark[=frames]}.
+     */
+    static class RendererBenchmark {
+        private final String inputImagePath;
+        private final PngEncoder encoder;
+        private final int width;
+        private final int height;
+        private final List<String> infoItems;
+        private final com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
 
-            // Draw the original image
-            int imageWidth = width - infoWidth - (2 * padding);
-            g2d.drawImage(originalImage, padding, padding, logoSize, logoSize, null);
+        RendererBenchmark(String inputImagePath, int width, int height, PngEncoder encoder) {
+            this.inputImagePath = inputImagePath;
+            this.encoder = encoder;
+            this.width = width;
+            this.height = height;
+            this.infoItems = new InfoCollector(InfoProvider.discover()).collect()
+                    .lines(provider -> !provider.name().equals("network"));
+            infoItems.add("Network eth0: 192.168.1.10");
+            infoItems.add("Network wlan0: 192.168.1.11");
+        }
 
-            // Configure text rendering
-            g2d.setRenderingHint(
-                    RenderingHints.KEY_TEXT_ANTIALIASING,
-                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON
-            );
-            g2d.setFont(new Font("Arial", Font.PLAIN, 12));
+        void run(int frames) throws IOException {
+            var renderer = new WallpaperRenderer(inputImagePath, width, height, encoder);
+            var logo = ImageIO.read(new File(inputImagePath));
 
-            // Add system information text
-            g2d.setColor(new Color(255, 255, 255));
-            int y = padding + lineHeight;
-            int x = width - infoWidth + padding;
-            for (String info : infoItems) {
-                g2d.drawString(info, x , y);
-                y += lineHeight;
+            // Warmup, so both are compiled
+            measure(frames, i -> fullRedraw(logo, frame(i)));
+            measure(frames, i -> renderer.draw(frame(i)));
+
+            System.out.printf("Full redraw: %s%n", measure(frames, i -> fullRedraw(logo, frame(i))));
+            System.out.printf("Incremental: %s%n", measure(frames, i -> renderer.draw(frame(i))));
+        }
+
+        private List<String> frame(int i) {
+            infoItems.set(infoItems.size() - 1, "Network wlan0: 192.168.1." + (11 + i % 2));
+            return infoItems;
+        }
+
+        private String measure(int frames, java.util.function.IntConsumer frame) {
+            long bytes = threadBean.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                frame.accept(i);
             }
+            long duration = System.nanoTime() - start;
+            bytes = threadBean.getCurrentThreadAllocatedBytes() - bytes;
+            return String.format("%d us/frame, %d bytes/frame", duration / 1_000 / frames, bytes / frames);
+        }
 
+        /**
+         * The drawing of the renderer before it kept a base layer: a new image with the background, the scaled logo
+         * and all the lines.
+         */
+        private void fullRedraw(BufferedImage logo, List<String> infoItems) {
+            var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2d = image.createGraphics();
+            g2d.setComposite(AlphaComposite.Src);
+            g2d.setColor(WallpaperRenderer.BACKGROUND);
+            g2d.fillRect(0, 0, width, height);
+            g2d.setComposite(AlphaComposite.SrcOver);
+            g2d.drawImage(logo, WallpaperRenderer.PADDING, WallpaperRenderer.PADDING,
+                    WallpaperRenderer.LOGO_SIZE, WallpaperRenderer.LOGO_SIZE, null);
+            g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g2d.setFont(new Font("Arial", Font.PLAIN, 12));
+            g2d.setColor(WallpaperRenderer.TEXT);
+            int y = WallpaperRenderer.PADDING + WallpaperRenderer.LINE_HEIGHT;
+            int x = width - WallpaperRenderer.INFO_WIDTH + WallpaperRenderer.PADDING;
+            for (String info : infoItems) {
+                g2d.drawString(info, x, y);
+                y += WallpaperRenderer.LINE_HEIGHT;
+            }
             g2d.dispose();
+        }
+    }
 
-            // Save the new image
-            var outputFile = new File(outputImagePath);
-            ImageIO.write(newImage, "PNG", outputFile);
-            return outputFile;
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
+    /**
+     * Keeps the renderer loaded and updates the wallpaper when a line is received on a Unix-domain socket, e.g.
+     * "update eth0 up" from the NetworkManager dispatcher script. The reply is "updated" or "unchanged".
+     *
+     * The wallpaper is only rendered again when the hostname or network info changed, the memory info is refreshed
+     * at the same time but is not a reason to render on its own. Addresses that are assigned later, e.g. by DHCP, are
+     * picked up by an {@link AddressWatcher}, which updates the wallpaper once the addresses are settled.
+     */
+    static class WallpaperDaemon {
+        private static final Duration READ_TIMEOUT = Duration.ofSeconds(5);
+
+        private final Path socketPath;
+        private final Duration debounce;
+        private final Duration timeout;
+        private final WallpaperRenderer renderer;
+        private final boolean lowMemory;
+        private final InfoCollector infoCollector = new InfoCollector(InfoProvider.discover());
+        private final ExecutorService executor = Executors.newSingleThreadExecutor();
+        private final ScheduledExecutorService readTimeouts = Executors.newSingleThreadScheduledExecutor();
+
+        private List<String> displayed = List.of();
+
+        WallpaperDaemon(Path socketPath, Duration debounce, Duration timeout, PngEncoder encoder, boolean lowMemory)
+                throws IOException {
+            this.socketPath = socketPath;
+            this.debounce = debounce;
+            this.timeout = timeout;
+            this.renderer = new WallpaperRenderer(INPUT_IMAGE, WIDTH, HEIGHT, encoder, lowMemory);
+            this.lowMemory = lowMemory;
+        }
+
+        /**
+         * The socket is only created in the runtime directory of the user, which nobody else can access. A socket at
+         * a predictable path in /tmp could be created by another user first, who then receives the updates.
+         *
+         * @return $XDG_RUNTIME_DIR/pi4j-wallpaper.sock
+         * @throws IOException if there is no runtime directory, e.g. when not started from a desktop session
+         */
+        static Path socketPath() throws IOException {
+            var runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+            if (runtimeDir == null || runtimeDir.isBlank()) {
+                throw new IOException("XDG_RUNTIME_DIR is not set, the daemon needs it for its socket");
+            }
+            return Paths.get(runtimeDir, "pi4j-wallpaper.sock");
+        }
+
+        void run() throws IOException {
+            // A socket file left by a previous run would make the bind fail
+            Files.deleteIfExists(socketPath);
+            try (var server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+                server.bind(UnixDomainSocketAddress.of(socketPath));
+                socketPath.toFile().deleteOnExit();
+                System.out.println("Listening on " + socketPath);
+
+                trigger("start");
+                var watcher = new Thread(this::watchAddresses, "wallpaper-addresses");
+                watcher.setDaemon(true);
+                watcher.start();
+                while (true) {
+                    var client = server.accept();
+                    Thread.ofVirtual().name("wallpaper-client").start(() -> handle(client));
+                }
+            }
+        }
+
+        private void handle(SocketChannel client) {
+            try (client;
+                 var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+                 Writer writer = new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8)) {
+                // A client that connects but never sends a line would otherwise keep its thread forever
+                var readTimeout = readTimeouts.schedule(() -> {
+                    client.close();
+                    return null;
+                }, READ_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                var message = reader.readLine();
+                readTimeout.cancel(false);
+                if (message == null) {
+                    return;
+                }
+                writer.write(trigger(message.trim()).get() + "\n");
+                writer.flush();
+            } catch (AsynchronousCloseException e) {
+                System.err.println("Closed update request without message after " + READ_TIMEOUT.toSeconds() + "s");
+            } catch (IOException | ExecutionException e) {
+                System.err.println("Failed to handle update request: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Updates the wallpaper each time the addresses changed and then settled.
+         */
+        private void watchAddresses() {
+            try (var addresses = AddressWatcher.open()) {
+                System.out.println("Watching addresses with " + addresses.getClass().getSimpleName());
+                while (true) {
+                    addresses.awaitChange(-1);
+                    addresses.awaitQuiet(debounce, timeout);
+                    trigger("addresses changed");
+                }
+            } catch (IOException e) {
+                System.err.println("Stopped watching addresses: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Updates the wallpaper if needed.
+         *
+         * @return "updated" or "unchanged"
+         */
+        private Future<String> trigger(String message) {
+            return executor.submit(() -> {
+                System.out.println("Received: " + message);
+                return update() ? "updated" : "unchanged";
+            });
+        }
+
+        /**
+         * @return true if the wallpaper was updated
+         */
+        private boolean update() {
+            var collected = infoCollector.collect();
+            var info = collected.lines(provider -> !provider.isVolatile());
+            if (info.equals(displayed)) {
+                return false;
+            }
+
+            collected.of("network").forEach(System.out::println);
+            long start = System.nanoTime();
+            try {
+                var outputFile = renderer.render(collected.all(), OUTPUT_IMAGE);
+                displayed = info;
+                System.out.println("Image generated in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+                if (lowMemory) {
+                    System.out.println("Memory: " + MemoryCheck.usage());
+                }
+                setWallpaper(outputFile);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Failed to generate image: " + e.getMessage());
+                return false;
+            }
         }
-        return null;
     }
 
-    private static List<String> getNetworkInfo() {
-        List<String> info = new ArrayList<>();
+    /**
+     * Waits until there is an IPv4 address and the addresses didn't change during the debounce time, e.g. until the
+     * DHCP lease is received, but not longer than the timeout.
+     */
+    private static void awaitNetworkSettled(Duration debounce, Duration timeout) {
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+        try (var addresses = AddressWatcher.open()) {
+            while (!hasAddress() && addresses.awaitChange(TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadline - System.nanoTime())))) {
+                // Wait for the next change, this one didn't add an address yet
+            }
+            addresses.awaitQuiet(debounce, Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+        } catch (IOException e) {
+            System.err.println("Could not watch the addresses: " + e.getMessage());
+        }
+        System.out.println("Network settled in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+    }
 
-        // Give the network stack time to update
+    private static boolean hasAddress() {
         try {
-            Thread.sleep(3_000);
-        } catch (InterruptedException e) {
-            // Should not arrive here
+            return NetworkInterface.networkInterfaces()
+                    .filter(ni -> {
+                        try {
+                            return !ni.isLoopback() && ni.isUp();
+                        } catch (IOException e) {
+                            return false;
+                        }
+                    })
+                    .flatMap(NetworkInterface::inetAddresses)
+                    .anyMatch(addr -> addr instanceof Inet4Address);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Notifies about added and removed IP addresses. On Linux, this subscribes to the rtnetlink address groups,
+     * RTMGRP_IPV4_IFADDR and RTMGRP_IPV6_IFADDR, so the kernel wakes us up as soon as an address is assigned. If
+     * netlink is not available, the addresses are polled.
+     */
+    interface AddressWatcher extends AutoCloseable {
+        /**
+         * @param timeoutMillis maximum time to wait in milliseconds, -1 to wait forever
+         * @return true if the addresses changed, false on timeout
+         */
+        boolean awaitChange(long timeoutMillis) throws IOException;
+
+        /**
+         * Waits until the addresses didn't change during the debounce time, but not longer than the timeout.
+         */
+        default void awaitQuiet(Duration debounce, Duration timeout) throws IOException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            long remaining;
+            while ((remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) > 0
+                    && awaitChange(Math.min(debounce.toMillis(), remaining))) {
+                // Changed again, wait for another debounce time
+            }
         }
 
+        @Override
+        void close();
+
+        static AddressWatcher open() {
+            try {
+                return new NetlinkAddressWatcher();
+            } catch (Throwable e) {
+                System.err.println("Netlink is not available, polling the addresses: " + e.getMessage());
+                return new PollingAddressWatcher();
+            }
+        }
+    }
+
+    static class NetlinkAddressWatcher implements AddressWatcher {
+        private static final int AF_NETLINK = 16;
+        private static final int SOCK_RAW = 3;
+        private static final int SOCK_CLOEXEC = 0x80000;
+        private static final int NETLINK_ROUTE = 0;
+        private static final int RTMGRP_IPV4_IFADDR = 0x10;
+        private static final int RTMGRP_IPV6_IFADDR = 0x100;
+        private static final short POLLIN = 0x1;
+        private static final int MSG_DONTWAIT = 0x40;
+        private static final int EINTR = 4;
+        private static final int EAGAIN = 11;
+
+        private static final Linker LINKER = Linker.nativeLinker();
+        private static final Linker.Option ERRNO = Linker.Option.captureCallState("errno");
+        private static final VarHandle ERRNO_HANDLE = Linker.Option.captureStateLayout()
+                .varHandle(MemoryLayout.PathElement.groupElement("errno"));
+        private static final MethodHandle SOCKET = downcall("socket",
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        private static final MethodHandle BIND = downcall("bind",
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        private static final MethodHandle POLL = downcall("poll",
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT));
+        private static final MethodHandle RECV = downcall("recv",
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT));
+        private static final MethodHandle CLOSE = LINKER.downcallHandle(LINKER.defaultLookup().find("close").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+
+        private final Arena arena = Arena.ofShared();
+        private final MemorySegment errno = arena.allocate(Linker.Option.captureStateLayout());
+        private final MemorySegment pollFd = arena.allocate(8, 4);
+        private final MemorySegment buffer = arena.allocate(8192);
+        private final int fd;
+
+        NetlinkAddressWatcher() throws Throwable {
+            try {
+                fd = (int) SOCKET.invokeExact(errno, AF_NETLINK, SOCK_RAW | SOCK_CLOEXEC, NETLINK_ROUTE);
+                if (fd < 0) {
+                    throw new IOException("socket failed with errno " + errno());
+                }
+
+                // struct sockaddr_nl: nl_family, nl_pad, nl_pid (0: assigned by the kernel), nl_groups
+                var address = arena.allocate(12, 4);
+                address.set(ValueLayout.JAVA_SHORT, 0, (short) AF_NETLINK);
+                address.set(ValueLayout.JAVA_INT, 8, RTMGRP_IPV4_IFADDR | RTMGRP_IPV6_IFADDR);
+                if ((int) BIND.invokeExact(errno, fd, address, (int) address.byteSize()) < 0) {
+                    int error = errno();
+                    int ignored = (int) CLOSE.invokeExact(fd);
+                    throw new IOException("bind failed with errno " + error);
+                }
+            } catch (Throwable e) {
+                arena.close();
+                throw e;
+            }
+            pollFd.set(ValueLayout.JAVA_INT, 0, fd);
+            pollFd.set(ValueLayout.JAVA_SHORT, 4, POLLIN);
+        }
+
+        private static MethodHandle downcall(String name, FunctionDescriptor descriptor) {
+            return LINKER.downcallHandle(LINKER.defaultLookup().find(name).orElseThrow(), descriptor, ERRNO);
+        }
+
+        private int errno() {
+            return (int) ERRNO_HANDLE.get(errno, 0L);
+        }
+
+        @Override
+        public boolean awaitChange(long timeoutMillis) throws IOException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            try {
+                while (true) {
+                    int timeout = timeoutMillis < 0 ? -1
+                            : (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                    int ready = (int) POLL.invokeExact(errno, pollFd, 1L, timeout);
+                    if (ready > 0) {
+                        drain();
+                        return true;
+                    } else if (ready == 0) {
+                        return false;
+                    } else if (errno() != EINTR) {
+                        throw new IOException("poll failed with errno " + errno());
+                    }
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Reads all pending notifications, their content doesn't matter as the addresses are read again anyway.
+         */
+        private void drain() throws Throwable {
+            while ((long) RECV.invokeExact(errno, fd, buffer, buffer.byteSize(), MSG_DONTWAIT) > 0) {
+                // Next notification
+            }
+            if (errno() != EAGAIN) {
+                // ENOBUFS when notifications were lost, which also means the addresses changed
+                System.err.println("Reading netlink notifications failed with errno " + errno());
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                int ignored = (int) CLOSE.invokeExact(fd);
+            } catch (Throwable e) {
+                System.err.println("Could not close the netlink socket: " + e.getMessage());
+            }
+            arena.close();
+        }
+    }
+
+    /**
+     * Fallback that compares the addresses every second.
+     */
+    static class PollingAddressWatcher implements AddressWatcher {
+        private static final long POLL_INTERVAL_MILLIS = 1_000;
+
+        private List<String> addresses = getNetworkInfo();
+
+        @Override
+        public boolean awaitChange(long timeoutMillis) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            while (timeoutMillis < 0 || System.nanoTime() < deadline) {
+                try {
+                    long wait = timeoutMillis < 0 ? POLL_INTERVAL_MILLIS
+                            : Math.min(POLL_INTERVAL_MILLIS, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+                    Thread.sleep(Math.max(1, wait));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                var current = getNetworkInfo();
+                if (!current.equals(addresses)) {
+                    addresses = current;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static List<String> getNetworkInfo() {
+        List<String> info = new ArrayList<>();
+
         info.add("Network Information");
 
         // IP Addresses
@@ -145,7 +1370,6 @@ public class GenerateWallpaperInfoImage {
                         InetAddress addr = addresses.nextElement();
                         if (addr instanceof Inet4Address) {  // Only include IPv4 addresses
                             info.add("  IP (" + ni.getDisplayName() + "): " + addr.getHostAddress());
-                            System.out.println("Network found: " + ni.getDisplayName() + " - " + addr.getHostAddress());
                         }
                     }
 
@@ -158,38 +1382,298 @@ public class GenerateWallpaperInfoImage {
         return info;
     }
 
-    private static List<String> getSystemInfo() {
-        List<String> info = new ArrayList<>();
+    /**
+     * Provides lines of information for the wallpaper, e.g. the Java version. The providers run concurrently on
+     * virtual threads, each with its own deadline, see {@link InfoCollector}.
+     *
+     * <p>Additional providers can be registered via {@link ServiceLoader}, in a jar on the class path with a
+     * META-INF/services/GenerateWallpaperInfoImage$InfoProvider file. Their lines are shown after the built-in
+     * ones.</p>
+     */
+    public interface InfoProvider {
+        /**
+         * @return the unique name of this provider, e.g. "java"
+         */
+        String name();
 
-        // OS Information
-        info.add("Operating System");
-        info.add("   Name: " + System.getProperty("os.name"));
-        info.add("   Arch: " + System.getProperty("os.arch"));
-        if (System.getProperty("os.name").toLowerCase().contains("linux")) {
-            info.add("   Kernel: " + execute(Arrays.asList("uname", "-r")));
-        }
-        info.add("   Hostname: " + getHostName());
-
-        // Java Version
-        info.add("Java");
-        info.add("   Version: " + System.getProperty("java.version"));
-        info.add("   Runtime: " + System.getProperty("java.runtime.version"));
-        info.add("   Vendor: " + System.getProperty("java.vendor"));
-
-        // Raspberry Pi info
-        var pi4j = Pi4J.newAutoContext();
-        info.add("Raspberry Pi");
-        info.add("   Model: " + pi4j.boardInfo().getBoardModel().getLabel());
-
-        // Overall system memory using OperatingSystemMXBean
-        OperatingSystemMXBean osBean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
-        long totalPhysicalMemorySize = osBean.getTotalPhysicalMemorySize() / (1024 * 1024);
-        long freePhysicalMemorySize = osBean.getFreePhysicalMemorySize() / (1024 * 1024);
-        info.add("System Memory");
-        info.add("   Total: " + totalPhysicalMemorySize + "MB");
-        info.add("   Free: " + freePhysicalMemorySize + "MB");
+        /**
+         * @return the lines to show, starting with a title, followed by indented values
+         */
+        List<String> lines() throws Exception;
 
-        return info;
+        /**
+         * @return the maximum time to wait for the lines, after which the {@link #placeholder()} is shown
+         */
+        default Duration deadline() {
+            return Duration.ofSeconds(2);
+        }
+
+        /**
+         * Facts that can't change within a boot, like the kernel or the board model, are only collected once.
+         *
+         * @return {@code true} if the lines can be cached
+         */
+        default boolean isStatic() {
+            return false;
+        }
+
+        /**
+         * The daemon only updates the wallpaper when other lines than these changed, e.g. not when only the free
+         * memory changed.
+         *
+         * @return {@code true} if the lines change all the time
+         */
+        default boolean isVolatile() {
+            return false;
+        }
+
+        /**
+         * @return the lines to show when the provider fails or doesn't finish before its deadline
+         */
+        default List<String> placeholder() {
+            return List.of();
+        }
+
+        /**
+         * @return the built-in providers in display order, followed by the ones registered via {@link ServiceLoader}.
+         *         A registered provider with the same name as a built-in one is ignored.
+         */
+        static List<InfoProvider> discover() {
+            var providers = new LinkedHashMap<String, InfoProvider>();
+            List.of(new OperatingSystemInfo(),
+                    new HostnameInfo(),
+                    new JavaInfo(),
+                    new BoardInfo(),
+                    new MemoryInfo(),
+                    new NetworkInfo()
+            ).forEach(p -> providers.put(p.name(), p));
+            try {
+                ServiceLoader.load(InfoProvider.class).forEach(p -> providers.putIfAbsent(p.name(), p));
+            } catch (Exception | ServiceConfigurationError e) {
+                System.err.printf("Could not load additional info providers: %s%n", e.getMessage());
+            }
+            return List.copyOf(providers.values());
+        }
+    }
+
+    static class OperatingSystemInfo implements InfoProvider {
+        @Override
+        public String name() {
+            return "os";
+        }
+
+        @Override
+        public boolean isStatic() {
+            return true;
+        }
+
+        @Override
+        public List<String> lines() {
+            List<String> info = new ArrayList<>();
+            info.add("Operating System");
+            info.add("   Name: " + System.getProperty("os.name"));
+            info.add("   Arch: " + System.getProperty("os.arch"));
+            if (System.getProperty("os.name").toLowerCase().contains("linux")) {
+                // On Linux, os.version is the kernel release, the same as 'uname -r'
+                info.add("   Kernel: " + System.getProperty("os.version"));
+            }
+            return info;
+        }
+    }
+
+    /**
+     * The hostname can change with the network, and its lookup can block on DNS, so it has its own provider.
+     */
+    static class HostnameInfo implements InfoProvider {
+        @Override
+        public String name() {
+            return "hostname";
+        }
+
+        @Override
+        public List<String> lines() {
+            return List.of("   Hostname: " + getHostName());
+        }
+
+        @Override
+        public List<String> placeholder() {
+            return List.of("   Hostname: unknown");
+        }
+    }
+
+    static class JavaInfo implements InfoProvider {
+        @Override
+        public String name() {
+            return "java";
+        }
+
+        @Override
+        public boolean isStatic() {
+            return true;
+        }
+
+        @Override
+        public List<String> lines() {
+            return List.of("Java",
+                    "   Version: " + System.getProperty("java.version"),
+                    "   Runtime: " + System.getProperty("java.runtime.version"),
+                    "   Vendor: " + System.getProperty("java.vendor"));
+        }
+    }
+
+    /**
+     * The Pi4J context is only needed for the board detection, so it is closed again immediately. Starting it loads
+     * all plugins, which takes a while on a cold JVM, so this provider has a longer deadline.
+     */
+    static class BoardInfo implements InfoProvider {
+        @Override
+        public String name() {
+            return "board";
+        }
+
+        @Override
+        public Duration deadline() {
+            return Duration.ofSeconds(10);
+        }
+
+        @Override
+        public boolean isStatic() {
+            return true;
+        }
+
+        @Override
+        public List<String> lines() {
+            var pi4j = Pi4J.newAutoContext();
+            try {
+                return List.of("Raspberry Pi", "   Model: " + pi4j.boardInfo().getBoardModel().getLabel());
+            } finally {
+                pi4j.shutdown();
+            }
+        }
+
+        @Override
+        public List<String> placeholder() {
+            return List.of("Raspberry Pi", "   Model: unknown");
+        }
+    }
+
+    static class MemoryInfo implements InfoProvider {
+        @Override
+        public String name() {
+            return "memory";
+        }
+
+        @Override
+        public boolean isVolatile() {
+            return true;
+        }
+
+        @Override
+        public List<String> lines() {
+            // Overall system memory using OperatingSystemMXBean
+            OperatingSystemMXBean osBean = ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+            long totalPhysicalMemorySize = osBean.getTotalPhysicalMemorySize() / (1024 * 1024);
+            long freePhysicalMemorySize = osBean.getFreePhysicalMemorySize() / (1024 * 1024);
+            return List.of("System Memory",
+                    "   Total: " + totalPhysicalMemorySize + "MB",
+                    "   Free: " + freePhysicalMemorySize + "MB");
+        }
+    }
+
+    static class NetworkInfo implements InfoProvider {
+        @Override
+        public String name() {
+            return "network";
+        }
+
+        @Override
+        public List<String> lines() {
+            return getNetworkInfo();
+        }
+
+        @Override
+        public List<String> placeholder() {
+            return List.of("Network Information");
+        }
+    }
+
+    /**
+     * Lines of each provider, in display order.
+     */
+    record CollectedInfo(Map<InfoProvider, List<String>> lines) {
+        List<String> all() {
+            return lines(provider -> true);
+        }
+
+        List<String> lines(java.util.function.Predicate<InfoProvider> filter) {
+            List<String> result = new ArrayList<>();
+            lines.forEach((provider, providerLines) -> {
+                if (filter.test(provider)) {
+                    result.addAll(providerLines);
+                }
+            });
+            return result;
+        }
+
+        List<String> of(String name) {
+            return lines(provider -> provider.name().equals(name));
+        }
+    }
+
+    /**
+     * Runs the {@link InfoProvider}s concurrently on virtual threads. A provider that fails or misses its deadline
+     * gets its placeholder, so a hanging DNS lookup doesn't delay the wallpaper. The deadlines start together, so the
+     * wallpaper waits at most the longest deadline.
+     *
+     * <p>The lines of static providers are collected once and kept. When such a provider misses its deadline, it
+     * keeps running, and its lines are used as soon as they are available. When it fails, it is tried again on the
+     * next collection.</p>
+     *
+     * <p>Other providers run again for each collection, but not while their previous run is still going. A lookup
+     * that missed its deadline is not cancelled, as e.g. a hostname lookup can't be interrupted, and the next
+     * collection waits for the same run instead of starting one more.</p>
+     */
+    static class InfoCollector {
+        private final List<InfoProvider> providers;
+        private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        private final Map<String, Future<List<String>>> staticLines = new ConcurrentHashMap<>();
+        private final Map<String, Future<List<String>>> running = new ConcurrentHashMap<>();
+
+        InfoCollector(List<InfoProvider> providers) {
+            this.providers = providers;
+        }
+
+        CollectedInfo collect() {
+            var futures = new LinkedHashMap<InfoProvider, Future<List<String>>>();
+            for (var provider : providers) {
+                futures.put(provider, provider.isStatic()
+                        ? staticLines.computeIfAbsent(provider.name(), name -> executor.submit(provider::lines))
+                        : running.compute(provider.name(), (name, previous) -> previous != null && !previous.isDone()
+                                ? previous
+                                : executor.submit(provider::lines)));
+            }
+
+            long start = System.nanoTime();
+            var lines = new LinkedHashMap<InfoProvider, List<String>>();
+            futures.forEach((provider, future) -> {
+                long remaining = provider.deadline().toNanos() - (System.nanoTime() - start);
+                try {
+                    lines.put(provider, future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    System.err.printf("Info provider %s didn't finish within %d ms%n", provider.name(),
+                            provider.deadline().toMillis());
+                    lines.put(provider, provider.placeholder());
+                } catch (ExecutionException e) {
+                    System.err.printf("Info provider %s failed: %s%n", provider.name(), e.getCause());
+                    staticLines.remove(provider.name(), future);
+                    lines.put(provider, provider.placeholder());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    lines.put(provider, provider.placeholder());
+                }
+            });
+            return new CollectedInfo(lines);
+        }
     }
 
     private static String getHostName() {
@@ -286,35 +1770,4 @@ public class GenerateWallpaperInfoImage {
             return -1;
         }
     }
-
-    private static String execute(List<String> command) {
-        System.out.println("Excecuting: " + String.join(" ", command));
-
-        var result = new StringBuilder();
-        try {
-            // Create and configure ProcessBuilder
-            ProcessBuilder processBuilder = new ProcessBuilder(command);
-            processBuilder.redirectErrorStream(true);
-
-            // Start process
-            Process process = processBuilder.start();
-
-            // Read output using modern try-with-resources
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                reader.lines().forEach(result::append);
-            }
-
-            // Wait for completion with timeout
-            if (process.waitFor(1, TimeUnit.MINUTES)) {
-                System.out.println("Process completed with exit code: " + process.exitValue());
-            } else {
-                process.destroyForcibly();
-                System.err.println("Process timed out");
-            }
-        } catch (Exception e) {
-            System.err.println("Error retrieving output from cmd: " + String.join(" ", command));
-        }
-        return result.toString();
-    }
 }
-